@@ -0,0 +1,116 @@
+package brightspark.asynclocator.benchmark;
+
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.OverloadPolicy;
+import brightspark.asynclocator.platform.services.ConfigHelper;
+
+/**
+ * The default config values, without a loader to read them from. Benchmarks change the executor settings through the
+ * static fields.
+ */
+public class BenchmarkConfigHelper implements ConfigHelper {
+	static int locatorThreads = 1;
+	static ExecutorMode executorMode = ExecutorMode.FIXED;
+	static int virtualThreadTasks = 64;
+
+	@Override
+	public int locatorThreads() {
+		return locatorThreads;
+	}
+
+	@Override
+	public ExecutorMode executorMode() {
+		return executorMode;
+	}
+
+	@Override
+	public int virtualThreadTasks() {
+		return virtualThreadTasks;
+	}
+
+	@Override
+	public int parallelSearchThreads() {
+		return 0;
+	}
+
+	@Override
+	public int maxQueuedTasks() {
+		return 65536;
+	}
+
+	@Override
+	public OverloadPolicy overloadPolicy() {
+		return OverloadPolicy.REJECT;
+	}
+
+	@Override
+	public int locateTimeoutSeconds() {
+		return 0;
+	}
+
+	@Override
+	public boolean persistentStructureStore() {
+		return false;
+	}
+
+	@Override
+	public int liveStructureIndexChunks() {
+		return 0;
+	}
+
+	@Override
+	public int resultApplyBudgetMicros() {
+		return 0;
+	}
+
+	@Override
+	public int biomeSearchRadius() {
+		return 6400;
+	}
+
+	@Override
+	public boolean removeOffer() {
+		return false;
+	}
+
+	@Override
+	public boolean dolphinTreasureEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean eyeOfEnderEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean explorationMapEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean locateCommandEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean locateBiomeCommandEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean villagerTradeEnabled() {
+		return true;
+	}
+
+	@Override
+	public int locatePriority(LocateFeature feature) {
+		return feature.isCommand() ? 10 : 5;
+	}
+
+	@Override
+	public int locateQuota(LocateFeature feature) {
+		return 0;
+	}
+}
@@ -0,0 +1,27 @@
+package brightspark.asynclocator.benchmark;
+
+import brightspark.asynclocator.logic.PendingMapJobs;
+import brightspark.asynclocator.platform.services.ExplorationMapFunctionLogicHelper;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.maps.MapDecorationType;
+import org.jetbrains.annotations.Nullable;
+
+// There aren't any containers in the benchmark, so a map result that reaches here has nothing to update
+public class BenchmarkExplorationMapFunctionLogicHelper implements ExplorationMapFunctionLogicHelper {
+	@Override
+	public void invalidateMap(PendingMapJobs.Job job, ServerLevel level) {}
+
+	@Override
+	public void updateMap(
+		PendingMapJobs.Job job,
+		ServerLevel level,
+		BlockPos pos,
+		int scale,
+		Holder<MapDecorationType> destinationTypeHolder,
+		@Nullable Component displayName,
+		@Nullable byte[] biomePreview
+	) {}
+}
@@ -0,0 +1,20 @@
+package brightspark.asynclocator.benchmark;
+
+import brightspark.asynclocator.platform.services.PlatformHelper;
+
+public class BenchmarkPlatformHelper implements PlatformHelper {
+	@Override
+	public String getPlatformName() {
+		return "Benchmark";
+	}
+
+	@Override
+	public boolean isModLoaded(String modId) {
+		return false;
+	}
+
+	@Override
+	public boolean isDevelopmentEnvironment() {
+		return true;
+	}
+}
@@ -0,0 +1,131 @@
+package brightspark.asynclocator.benchmark;
+
+import brightspark.asynclocator.locate.CpuPermits;
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocatingExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The path a locate takes from being submitted to its result being handed over on the server thread: the locating
+ * executor, the task's {@link CompletableFuture}, and the hand over to the server thread that
+ * {@code LocateTask#thenOnServerThread} does.
+ * <p>
+ * {@code LocateTask} needs a running {@code MinecraftServer}, so a single thread executor stands in for the server
+ * thread, and the search is a stub that uses the CPU for {@link #searchCpuTokens} and then waits {@link #chunkWaitMicros}
+ * as if loading a chunk. The executor is set up the same way {@code AsyncLocator#setupExecutorService} does for each
+ * {@link ExecutorMode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LocatePipelineBenchmark {
+	private static final int BATCH = 64;
+
+	@Param({"FIXED", "VIRTUAL"})
+	public ExecutorMode executorMode;
+
+	@Param({"1", "4"})
+	public int locatorThreads;
+
+	@Param({"0", "10000"})
+	public long searchCpuTokens;
+
+	@Param({"0", "500"})
+	public long chunkWaitMicros;
+
+	private LocatingExecutor executor;
+	private ExecutorService serverThread;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkConfigHelper.locatorThreads = locatorThreads;
+		BenchmarkConfigHelper.executorMode = executorMode;
+		if (executorMode == ExecutorMode.VIRTUAL) {
+			executor = new LocatingExecutor(
+				Math.max(locatorThreads, BenchmarkConfigHelper.virtualThreadTasks),
+				Thread.ofVirtual().name("benchmark-locate-", 1).factory(),
+				locatorThreads
+			);
+		} else {
+			executor = new LocatingExecutor(locatorThreads, Thread.ofPlatform().name("benchmark-locate-", 1).daemon().factory());
+		}
+		serverThread = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("benchmark-server").daemon().factory());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		serverThread.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		serverThread.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	// Latency of one locate on an otherwise idle executor
+	@Benchmark
+	public Object single() throws Exception {
+		return locate().get();
+	}
+
+	// Throughput of a burst of locates, e.g. a village's worth of cartographers restocking at once
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void burst(Blackhole blackhole) throws Exception {
+		CompletableFuture<?>[] delivered = new CompletableFuture<?>[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			delivered[i] = locate();
+		}
+		CompletableFuture.allOf(delivered).get();
+		blackhole.consume(delivered);
+	}
+
+	private CompletableFuture<Object> locate() {
+		CompletableFuture<Object> completableFuture = new CompletableFuture<>();
+		CompletableFuture<Object> delivered = new CompletableFuture<>();
+		completableFuture.whenComplete((result, throwable) -> serverThread.execute(() -> {
+			if (throwable == null) delivered.complete(result);
+			else delivered.completeExceptionally(throwable);
+		}));
+		executor.submit(
+			LocateFeature.LOCATE_COMMAND,
+			() -> completableFuture.complete(search()),
+			() -> completableFuture.completeExceptionally(new RejectedExecutionException())
+		);
+		return delivered;
+	}
+
+	private Object search() {
+		Blackhole.consumeCPU(searchCpuTokens);
+		if (chunkWaitMicros > 0) {
+			CpuPermits.blocking(() -> {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(chunkWaitMicros));
+				return null;
+			});
+		}
+		return Boolean.TRUE;
+	}
+}
@@ -0,0 +1,89 @@
+package brightspark.asynclocator.benchmark;
+
+import brightspark.asynclocator.logic.CommonLogic;
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.saveddata.maps.MapId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The item checks in {@link CommonLogic} that run on the server thread for pending maps.
+ * <p>
+ * {@link CommonLogic#isEmptyPendingMap} runs from {@code SlotMixin} on every slot interaction, so it's measured against
+ * the kinds of stacks it mostly sees - items that aren't maps, and maps that aren't pending - as well as pending ones.
+ * {@link CommonLogic#clearPendingState} changes the stack, so it's run on a copy, and {@link #copyOnly()} is the cost of
+ * the copy to take away from it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PendingMapBenchmark {
+	private ItemStack otherItem;
+	private ItemStack plainMap;
+	private ItemStack pendingMap;
+	private ItemStack managedMap;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SharedConstants.tryDetectVersion();
+		Bootstrap.bootStrap();
+		otherItem = new ItemStack(Items.STONE);
+		plainMap = new ItemStack(Items.FILLED_MAP);
+		pendingMap = CommonLogic.createEmptyMap();
+		managedMap = CommonLogic.createManagedMap(1, new MapId(0));
+	}
+
+	@Benchmark
+	public boolean isEmptyPendingMapOtherItem() {
+		return CommonLogic.isEmptyPendingMap(otherItem);
+	}
+
+	@Benchmark
+	public boolean isEmptyPendingMapPlainMap() {
+		return CommonLogic.isEmptyPendingMap(plainMap);
+	}
+
+	@Benchmark
+	public boolean isEmptyPendingMapPending() {
+		return CommonLogic.isEmptyPendingMap(pendingMap);
+	}
+
+	@Benchmark
+	public int getJobIdManaged() {
+		return CommonLogic.getJobId(managedMap);
+	}
+
+	@Benchmark
+	public int getJobIdPlainMap() {
+		return CommonLogic.getJobId(plainMap);
+	}
+
+	@Benchmark
+	public ItemStack copyOnly() {
+		return managedMap.copy();
+	}
+
+	@Benchmark
+	public ItemStack clearPendingState() {
+		ItemStack stack = managedMap.copy();
+		CommonLogic.clearPendingState(stack);
+		return stack;
+	}
+}
@@ -1,27 +1,62 @@
 package brightspark.asynclocator;
 
+import brightspark.asynclocator.locate.BiomeSampleCache;
+import brightspark.asynclocator.locate.BiomeSearch;
+import brightspark.asynclocator.locate.CancellationToken;
+import brightspark.asynclocator.locate.ConcentricRingIndex;
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LiveStructureIndex;
+import brightspark.asynclocator.locate.LocateBatcher;
+import brightspark.asynclocator.locate.LocateCoalescer;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateMetrics;
+import brightspark.asynclocator.locate.LocateProgress;
+import brightspark.asynclocator.locate.LocateQuotaExceededException;
+import brightspark.asynclocator.locate.LocateQuotas;
+import brightspark.asynclocator.locate.LocateResultCache;
+import brightspark.asynclocator.locate.LocatingExecutor;
+import brightspark.asynclocator.locate.ResultQueue;
+import brightspark.asynclocator.locate.SearchPool;
+import brightspark.asynclocator.locate.StructureSearch;
+import brightspark.asynclocator.locate.StructureStore;
+import brightspark.asynclocator.logic.MerchantResync;
+import brightspark.asynclocator.logic.OpenContainerIndex;
+import brightspark.asynclocator.logic.PendingMapJobs;
+import brightspark.asynclocator.logic.PlaceholderMap;
 import brightspark.asynclocator.platform.Services;
 import com.mojang.datafixers.util.Pair;
+import net.minecraft.Util;
 import net.minecraft.commands.arguments.ResourceOrTagArgument;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.HolderSet;
+import net.minecraft.core.registries.Registries;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.tags.TagKey;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.chunk.ChunkGenerator;
 import net.minecraft.world.level.levelgen.structure.Structure;
+import org.jetbrains.annotations.Nullable;
 
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class AsyncLocator {
-	private static volatile ExecutorService LOCATING_EXECUTOR_SERVICE = null;
+	private static volatile LocatingExecutor LOCATING_EXECUTOR_SERVICE = null;
+	// Executors replaced by a change of mode that are still finishing their tasks, guarded by AsyncLocator.class
+	private static final List<LocatingExecutor> RETIRED_EXECUTORS = new ArrayList<>();
 	private static final AtomicInteger POOL_COUNTER = new AtomicInteger(1);
+	// Bumped each time the executor is shut down, so tasks deferred before then aren't started after it, guarded by
+	// AsyncLocator.class
+	private static int executorGeneration = 0;
 
 	private AsyncLocator() {}
 
@@ -29,55 +64,232 @@ public class AsyncLocator {
 	public static void setupExecutorService() {
 		synchronized (AsyncLocator.class) {
 			shutdownExecutorService();
+			LOCATING_EXECUTOR_SERVICE = createExecutor();
+		}
+	}
 
-			int threads = Services.CONFIG.locatorThreads();
-			if (threads <= 0) {
-				ALConstants.logWarn("Configured locatorThreads <= 0 ({}). Falling back to 1 thread", threads);
-				threads = 1;
+	/**
+	 * Applies a config change to the running executor without losing queued or running tasks, or anything cached.
+	 * <p>
+	 * A new thread count is applied by resizing the pool in place. A new executor mode needs a new pool, so one is
+	 * started for new tasks while the old one finishes what it already has and then stops.
+	 */
+	public static void reconfigureExecutorService() {
+		synchronized (AsyncLocator.class) {
+			LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+			if (executor == null || executor.isShutdown()) {
+				return;
 			}
-			ALConstants.logInfo("Starting locating executor service with thread pool size of {}", threads);
-
-			final String namePrefix = ALConstants.MOD_ID + "-" + POOL_COUNTER.getAndIncrement() + "-thread-";
-			final AtomicInteger threadNum = new AtomicInteger(1);
-
-			LOCATING_EXECUTOR_SERVICE = Executors.newFixedThreadPool(
-				threads,
-				r -> {
-					Thread t = new Thread(r, namePrefix + threadNum.getAndIncrement());
-					t.setDaemon(true);
-					t.setUncaughtExceptionHandler((th, e) -> ALConstants.logError(e, "Uncaught exception in locating thread {}", th.getName()));
-					return t;
-				}
+			if (executor.mode() != Services.CONFIG.executorMode()) {
+				ALConstants.logInfo(
+					"Executor mode changed from {} to {} - the old executor will stop once its {} queued tasks are done",
+					executor.mode(), Services.CONFIG.executorMode(), executor.queueDepth()
+				);
+				LOCATING_EXECUTOR_SERVICE = createExecutor();
+				executor.shutdown();
+				RETIRED_EXECUTORS.removeIf(ThreadPoolExecutor::isTerminated);
+				RETIRED_EXECUTORS.add(executor);
+				return;
+			}
+
+			int threads = configuredThreads();
+			int poolSize = executor.mode() == ExecutorMode.VIRTUAL
+				? Math.max(threads, Services.CONFIG.virtualThreadTasks())
+				: threads;
+			if (poolSize == executor.getMaximumPoolSize() && threads == executor.cpuThreads()) {
+				return;
+			}
+			ALConstants.logInfo(
+				"Resizing locating executor service from {} to {} threads ({} at a time on the CPU)",
+				executor.getMaximumPoolSize(), poolSize, threads
+			);
+			executor.resize(poolSize, threads);
+		}
+	}
+
+	private static int configuredThreads() {
+		int threads = Services.CONFIG.locatorThreads();
+		if (threads <= 0) {
+			ALConstants.logWarn("Configured locatorThreads <= 0 ({}). Falling back to 1 thread", threads);
+			threads = 1;
+		}
+		return threads;
+	}
+
+	private static LocatingExecutor createExecutor() {
+		int threads = configuredThreads();
+		final String namePrefix = ALConstants.MOD_ID + "-" + POOL_COUNTER.getAndIncrement() + "-thread-";
+		Thread.UncaughtExceptionHandler exceptionHandler =
+			(th, e) -> ALConstants.logError(e, "Uncaught exception in locating thread {}", th.getName());
+
+		if (Services.CONFIG.executorMode() == ExecutorMode.VIRTUAL) {
+			int tasks = Math.max(threads, Services.CONFIG.virtualThreadTasks());
+			ALConstants.logInfo(
+				"Starting locating executor service on virtual threads running up to {} tasks, {} at a time on the CPU",
+				tasks, threads
+			);
+			/*
+			 * Virtual threads are meant to be made per task rather than pooled, but this pool is what orders tasks by
+			 * priority and caps the queue, and its threads are cheap to keep around.
+			 */
+			return new LocatingExecutor(
+				tasks,
+				Thread.ofVirtual().name(namePrefix, 1).uncaughtExceptionHandler(exceptionHandler).factory(),
+				threads
 			);
 		}
+
+		ALConstants.logInfo("Starting locating executor service with thread pool size of {}", threads);
+		final AtomicInteger threadNum = new AtomicInteger(1);
+
+		return new LocatingExecutor(
+			threads,
+			r -> {
+				Thread t = new Thread(r, namePrefix + threadNum.getAndIncrement());
+				t.setDaemon(true);
+				t.setUncaughtExceptionHandler(exceptionHandler);
+				return t;
+			}
+		);
 	}
 
 	public static void shutdownExecutorService() {
-		ExecutorService executor;
+		LocatingExecutor executor;
+		List<LocatingExecutor> retired;
 		synchronized (AsyncLocator.class) {
 			executor = LOCATING_EXECUTOR_SERVICE;
 			LOCATING_EXECUTOR_SERVICE = null;
+			executorGeneration++;
+			retired = new ArrayList<>(RETIRED_EXECUTORS);
+			RETIRED_EXECUTORS.clear();
 		}
+		retired.forEach(ThreadPoolExecutor::shutdownNow);
 
+		LocateResultCache.clear();
+		ConcentricRingIndex.clear();
+		LiveStructureIndex.clear();
+		BiomeSampleCache.clear();
+		LocateCoalescer.clear();
+		LocateBatcher.clear();
+		PendingMapJobs.clear();
+		MerchantResync.clear();
+		OpenContainerIndex.clear();
+		PlaceholderMap.clear();
+		LocateQuotas.clear();
+		LocateMetrics.reset();
+		SearchPool.shutdown();
+		StructureStore.close();
 		if (executor == null) {
 			return;
 		}	
 
 		ALConstants.logInfo("Shutting down locating executor service");
-		executor.shutdown();
+		// Nothing can use the results once the server has stopped, so running searches are interrupted and stop at
+		// their next cancellation check, and queued ones are dropped
+		List<Runnable> pending = executor.shutdownNow();
+		if (!pending.isEmpty()) {
+			ALConstants.logInfo("Dropped {} queued locate tasks", pending.size());
+		}
 		try {
 			if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-				List<Runnable> pending = executor.shutdownNow();
-				ALConstants.logWarn("Executor did not terminate cleanly, pending tasks: {}", pending.size());
+				ALConstants.logWarn("Executor did not terminate cleanly");
 			}
 		} catch (InterruptedException ie) {
-			executor.shutdownNow();
 			Thread.currentThread().interrupt();
 		}
 	}
 
+	/**
+	 * Called once datapacks have been reloaded, as tags may have different members now.
+	 */
+	public static void onDatapackReload() {
+		LocateResultCache.clear();
+		// Reopened on next use, when it's checked against the new tags
+		StructureStore.close();
+	}
+
+	/**
+	 * Called at the end of each server tick.
+	 */
+	public static void onServerTickEnd(MinecraftServer server) {
+		LocateBatcher.flush();
+		// Before the merchant resync, so offers changed by results applied this tick go out with it
+		ResultQueue.drain(server);
+		PendingMapJobs.onTickEnd();
+		MerchantResync.flush();
+	}
+
+	private static LocatingExecutor getExecutor() {
+		synchronized (AsyncLocator.class) {
+			LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+			if (executor == null || executor.isShutdown()) {
+				ALConstants.logWarn("Locating executor service not initialized or not active: creating lazily");
+				setupExecutorService();
+				executor = LOCATING_EXECUTOR_SERVICE;
+			}
+			return executor;
+		}
+	}
+
+	/**
+	 * Raises the priority of the task to that of the given feature if it's still queued and has a lower priority.
+	 */
+	public static void raisePriority(LocateTask<?> task, LocateFeature feature) {
+		LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+		if (executor != null) {
+			executor.raisePriority(task.taskFuture(), feature);
+		}
+	}
+
+	/**
+	 * The number of locate tasks currently waiting to be run.
+	 */
+	public static int queueDepth() {
+		LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+		return executor == null ? 0 : executor.queueDepth();
+	}
+
+	/**
+	 * The number of threads currently running locate tasks.
+	 */
+	public static int activeThreads() {
+		LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+		return executor == null ? 0 : executor.activeThreads();
+	}
+
+	/**
+	 * The number of threads in the locating executor, or 0 if it isn't running.
+	 */
+	public static int poolSize() {
+		LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+		return executor == null ? 0 : executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * The number of locate tasks that have been rejected because the queue was full.
+	 */
+	public static long rejectedCount() {
+		LocatingExecutor executor = LOCATING_EXECUTOR_SERVICE;
+		return executor == null ? 0 : executor.rejectedCount();
+	}
+
+	/**
+	 * Whether the throwable a locate task completed with means it was rejected, because either the queue was full or
+	 * its source was over quota.
+	 */
+	public static boolean isRejected(@Nullable Throwable throwable) {
+		return asRejection(throwable) != null;
+	}
+
+	private static @Nullable RejectedExecutionException asRejection(@Nullable Throwable throwable) {
+		if (throwable instanceof CompletionException && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		return throwable instanceof RejectedExecutionException rejection ? rejection : null;
+	}
+
 	public static boolean isExecutorActive() {
-		ExecutorService es = LOCATING_EXECUTOR_SERVICE;
+		LocatingExecutor es = LOCATING_EXECUTOR_SERVICE;
 		return es != null && !es.isShutdown() && !es.isTerminated();
 	}
 
@@ -91,27 +303,49 @@ public class AsyncLocator {
 		BlockPos pos,
 		int searchRadius,
 		boolean skipKnownStructures
+	) {
+		return locate(LocateFeature.OTHER, null, level, structureTag, pos, searchRadius, skipKnownStructures);
+	}
+
+	/**
+	 * Same as {@link #locate(ServerLevel, TagKey, BlockPos, int, boolean)}, but queued with the priority of the given
+	 * feature and counted against the source's quota for it (see {@link LocateQuotas}).
+	 *
+	 * @param source The quota source, or null if the request isn't metered
+	 */
+	public static LocateTask<BlockPos> locate(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		TagKey<Structure> structureTag,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
 	) {
 		ALConstants.logDebug(
 			"Creating locate task for {} in {} around {} within {} chunks",
 			structureTag, level, pos, searchRadius
 		);
 
-		ExecutorService executor;
-		synchronized (AsyncLocator.class) {
-			executor = LOCATING_EXECUTOR_SERVICE;
-			if (executor == null || executor.isShutdown()) {
-			ALConstants.logWarn("Locating executor service not initialized or not active: creating lazily");
-			setupExecutorService();
-				executor = LOCATING_EXECUTOR_SERVICE;
-			}
+		// Same as ServerLevel#findNearestMapStructure, so the search can go through the shared structure path
+		if (!level.getServer().getWorldData().worldGenOptions().generateStructures()) {
+			return completedTask(level, null);
+		}
+		Optional<HolderSet.Named<Structure>> structureSet =
+			level.registryAccess().lookupOrThrow(Registries.STRUCTURE).get(structureTag);
+		if (structureSet.isEmpty()) {
+			ALConstants.logDebug("No structures found for tag {}", structureTag);
+			return completedTask(level, null);
 		}
 
-		CompletableFuture<BlockPos> completableFuture = new CompletableFuture<>();
-		Future<?> future = executor.submit(
-			() -> doLocateLevel(completableFuture, level, structureTag, pos, searchRadius, skipKnownStructures)
+		LocateTask<Pair<BlockPos, Holder<Structure>>> task =
+			locateStructure(feature, source, level, structureSet.get(), pos, searchRadius, skipKnownStructures);
+		return new LocateTask<>(
+			level.getServer(),
+			task.completableFuture().thenApply(pair -> pair == null ? null : pair.getFirst()),
+			task.taskFuture(),
+			task.progress()
 		);
-		return new LocateTask<>(level.getServer(), completableFuture, future);
 	}
 
 	/**
@@ -125,66 +359,344 @@ public class AsyncLocator {
 		BlockPos pos,
 		int searchRadius,
 		boolean skipKnownStructures
+	) {
+		return locate(LocateFeature.OTHER, null, level, structureSet, pos, searchRadius, skipKnownStructures);
+	}
+
+	/**
+	 * Same as {@link #locate(ServerLevel, HolderSet, BlockPos, int, boolean)}, but queued with the priority of the
+	 * given feature and counted against the source's quota for it (see {@link LocateQuotas}).
+	 *
+	 * @param source The quota source, or null if the request isn't metered
+	 */
+	public static LocateTask<Pair<BlockPos, Holder<Structure>>> locate(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
 	) {
 		ALConstants.logDebug(
 			"Creating locate task for {} in {} around {} within {} chunks",
 			structureSet, level, pos, searchRadius
 		);
+		return locateStructure(feature, source, level, structureSet, pos, searchRadius, skipKnownStructures);
+	}
 
-		ExecutorService executor;
-		synchronized (AsyncLocator.class) {
-			executor = LOCATING_EXECUTOR_SERVICE;
-			if (executor == null || executor.isShutdown()) {
-				ALConstants.logWarn("Locating executor service not initialized or not active: creating lazily");
-				setupExecutorService();
-				executor = LOCATING_EXECUTOR_SERVICE;
+	/**
+	 * Same as {@link #locate(LocateFeature, String, ServerLevel, HolderSet, BlockPos, int, boolean)} for several
+	 * structure sets from the same origin, searched in one pass (see {@link StructureSearch#findNearestMapStructures}).
+	 * The pass is queued as one task and counted against the quota as one search.
+	 *
+	 * @return A task for each structure set, in the same order
+	 */
+	public static List<LocateTask<Pair<BlockPos, Holder<Structure>>>> locateBatch(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		List<HolderSet<Structure>> structureSets,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {
+		if (structureSets.size() == 1) {
+			return List.of(locate(feature, source, level, structureSets.get(0), pos, searchRadius, skipKnownStructures));
+		}
+		ALConstants.logDebug(
+			"Creating batched locate task for {} in {} around {} within {} chunks",
+			structureSets, level, pos, searchRadius
+		);
+		long requestedNanos = System.nanoTime();
+		List<LocateTask<Pair<BlockPos, Holder<Structure>>>> tasks = new ArrayList<>(structureSets.size());
+		List<Integer> uncached = new ArrayList<>(structureSets.size());
+		List<LocateResultCache.Query> queries = new ArrayList<>(structureSets.size());
+		for (int i = 0; i < structureSets.size(); i++) {
+			LocateResultCache.Query query =
+				LocateResultCache.query(level, structureSets.get(i), pos, searchRadius, skipKnownStructures);
+			LocateResultCache.Hit hit = query == null ? null : LocateResultCache.get(level, query, pos, searchRadius);
+			tasks.add(hit == null ? null : completedTask(level, hit.result()));
+			if (hit == null) {
+				uncached.add(i);
 			}
+			queries.add(query);
 		}
 
-		CompletableFuture<Pair<BlockPos, Holder<Structure>>> completableFuture = new CompletableFuture<>();
-		Future<?> future = executor.submit(
-			() -> doLocateChunkGenerator(completableFuture, level, structureSet, pos, searchRadius, skipKnownStructures)
+		if (!uncached.isEmpty()) {
+			LocateQuotas.Permit permit = LocateQuotas.acquire(feature, source, !feature.isCommand());
+			if (permit.refused()) {
+				for (int i : uncached) {
+					tasks.set(i, rejectedTask(level, new LocateQuotaExceededException(feature, source, permit.delayNanos())));
+				}
+			} else {
+				List<LocateTask<Pair<BlockPos, Holder<Structure>>>> searched = submitStructureBatch(
+					feature, level, uncached.stream().map(structureSets::get).toList(), pos, searchRadius,
+					skipKnownStructures, uncached.stream().map(queries::get).toList(), permit.delayNanos()
+				);
+				for (int i = 0; i < uncached.size(); i++) {
+					tasks.set(uncached.get(i), searched.get(i));
+				}
+			}
+		}
+		tasks.replaceAll(task -> tracked(feature, level, requestedNanos, task));
+		return tasks;
+	}
+
+	/*
+	 * Each caller's future is also its task future, so cancelling one caller doesn't interrupt the pass the others are
+	 * waiting on. The pass stops once every caller's future is done.
+	 */
+	private static List<LocateTask<Pair<BlockPos, Holder<Structure>>>> submitStructureBatch(
+		LocateFeature feature,
+		ServerLevel level,
+		List<HolderSet<Structure>> structureSets,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures,
+		List<LocateResultCache.Query> queries,
+		long delayNanos
+	) {
+		List<CompletableFuture<Pair<BlockPos, Holder<Structure>>>> futures = new ArrayList<>(structureSets.size());
+		List<LocateProgress> progress = new ArrayList<>(structureSets.size());
+		List<LocateTask<Pair<BlockPos, Holder<Structure>>>> tasks = new ArrayList<>(structureSets.size());
+		for (int i = 0; i < structureSets.size(); i++) {
+			CompletableFuture<Pair<BlockPos, Holder<Structure>>> future = new CompletableFuture<>();
+			futures.add(future);
+			progress.add(new LocateProgress());
+			tasks.add(new LocateTask<>(level.getServer(), future, future, progress.get(i)));
+		}
+		CompletableFuture<Void> allDone = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+		CancellationToken token = newToken(allDone);
+		Runnable submit = () -> {
+			if (allDone.isDone()) {
+				return;
+			}
+			getExecutor().submit(
+				feature,
+				() -> doLocateBatch(
+					feature, futures, token, progress, level, structureSets, pos, searchRadius, skipKnownStructures, queries
+				),
+				() -> futures.forEach(future -> rejectTask(future, feature))
+			);
+		};
+		if (delayNanos > 0) {
+			submitLater(
+				feature, delayNanos, submit, rejection -> futures.forEach(future -> future.completeExceptionally(rejection))
+			);
+		} else {
+			submit.run();
+		}
+		return tasks;
+	}
+
+	private static LocateTask<Pair<BlockPos, Holder<Structure>>> locateStructure(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {
+		long requestedNanos = System.nanoTime();
+		return tracked(
+			feature,
+			level,
+			requestedNanos,
+			requestStructure(feature, source, level, structureSet, pos, searchRadius, skipKnownStructures)
 		);
-		return new LocateTask<>(level.getServer(), completableFuture, future);
 	}
 
-	private static void doLocateLevel(
-		CompletableFuture<BlockPos> completableFuture,
+	private static LocateTask<Pair<BlockPos, Holder<Structure>>> requestStructure(
+		LocateFeature feature,
+		@Nullable String source,
 		ServerLevel level,
-		TagKey<Structure> structureTag,
+		HolderSet<Structure> structureSet,
 		BlockPos pos,
 		int searchRadius,
-		boolean skipExistingChunks
+		boolean skipKnownStructures
 	) {
-		try {
-			ALConstants.logDebug(
-				"Trying to locate {} in {} around {} within {} chunks",
-				structureTag, level, pos, searchRadius
+		LocateResultCache.Query query = LocateResultCache.query(level, structureSet, pos, searchRadius, skipKnownStructures);
+		if (query != null) {
+			// Cached answers don't cost anything, so they aren't counted against the quota
+			LocateResultCache.Hit hit = LocateResultCache.get(level, query, pos, searchRadius);
+			if (hit != null) {
+				return completedTask(level, hit.result());
+			}
+		}
+		LocateQuotas.Permit permit = LocateQuotas.acquire(feature, source, !feature.isCommand());
+		if (permit.refused()) {
+			return rejectedTask(level, new LocateQuotaExceededException(feature, source, permit.delayNanos()));
+		}
+		if (permit.delayNanos() > 0) {
+			return deferredTask(
+				feature,
+				level,
+				permit.delayNanos(),
+				() -> searchStructure(feature, level, structureSet, pos, searchRadius, skipKnownStructures, query)
 			);
-			long start = System.nanoTime();
-			BlockPos foundPos = level.findNearestMapStructure(structureTag, pos, searchRadius, skipExistingChunks);
-			String time = NumberFormat.getNumberInstance().format(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
-			if (foundPos == null)
-				ALConstants.logInfo("No {} found (took {}ms)", structureTag, time);
-			else
-				ALConstants.logInfo("Found {} at {} (took {}ms)", structureTag, foundPos, time);
-			completableFuture.complete(foundPos);
-		} catch (Throwable t) {
-			ALConstants.logError(t, "Exception while locating {} around {}", structureTag, pos);
-			try {
-				completableFuture.complete(null);
-			} catch (Throwable ignore) {
+		}
+		return searchStructure(feature, level, structureSet, pos, searchRadius, skipKnownStructures, query);
+	}
+
+	private static LocateTask<Pair<BlockPos, Holder<Structure>>> searchStructure(
+		LocateFeature feature,
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures,
+		@Nullable LocateResultCache.Query query
+	) {
+		if (query == null) {
+			return submitStructureSearch(feature, level, structureSet, pos, searchRadius, skipKnownStructures, null);
+		}
+		if (skipKnownStructures) {
+			// Each of these searches references what it finds, so they can't share a result
+			return submitStructureSearch(feature, level, structureSet, pos, searchRadius, true, query);
+		}
+		return LocateCoalescer.join(
+			feature, level, query, pos, searchRadius,
+			() -> submitStructureSearch(feature, level, structureSet, pos, searchRadius, false, query)
+		);
+	}
+
+	private static LocateTask<Pair<BlockPos, Holder<Structure>>> submitStructureSearch(
+		LocateFeature feature,
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures,
+		@Nullable LocateResultCache.Query query
+	) {
+		CompletableFuture<Pair<BlockPos, Holder<Structure>>> completableFuture = new CompletableFuture<>();
+		CancellationToken token = newToken(completableFuture);
+		LocateProgress progress = new LocateProgress();
+		Future<?> future = getExecutor().submit(
+			feature,
+			() -> doLocateChunkGenerator(
+				feature, completableFuture, token, progress, level, structureSet, pos, searchRadius, skipKnownStructures, query
+			),
+			() -> rejectTask(completableFuture, feature)
+		);
+		return new LocateTask<>(level.getServer(), completableFuture, future, progress);
+	}
+
+	/*
+	 * Counts the request, and times it until its result can be handed over on the server thread. Results are handed
+	 * over by tasks queued on the server when the future completes, so this queues one alongside them.
+	 */
+	private static <T> LocateTask<T> tracked(LocateFeature feature, ServerLevel level, long requestedNanos, LocateTask<T> task) {
+		LocateMetrics.recordRequest(feature);
+		// Results reach the server thread through the result queue, so it's delivered once the queue gets to it
+		task.completableFuture().whenComplete((result, throwable) -> {
+			if (throwable == null) {
+				ResultQueue.onDelivered(
+					level.getServer(),
+					() -> LocateMetrics.recordEndToEnd(feature, System.nanoTime() - requestedNanos)
+				);
+			}
+		});
+		return task;
+	}
+
+	// The deadline starts when the task is queued, so tasks that waited out their deadline in the queue don't run at all
+	private static CancellationToken newToken(CompletableFuture<?> completableFuture) {
+		return new CancellationToken(completableFuture, TimeUnit.SECONDS.toNanos(Services.CONFIG.locateTimeoutSeconds()));
+	}
+
+	private static void rejectTask(CompletableFuture<?> completableFuture, LocateFeature feature) {
+		completableFuture.completeExceptionally(new RejectedExecutionException(
+			"Locating queue is full - rejected " + feature.id() + " locate task"
+		));
+	}
+
+	private static <T> LocateTask<T> completedTask(ServerLevel level, @Nullable T result) {
+		return new LocateTask<>(level.getServer(), CompletableFuture.completedFuture(result), CompletableFuture.completedFuture(null));
+	}
+
+	private static <T> LocateTask<T> rejectedTask(ServerLevel level, RejectedExecutionException exception) {
+		return new LocateTask<>(level.getServer(), CompletableFuture.failedFuture(exception), CompletableFuture.completedFuture(null));
+	}
+
+	/*
+	 * Starts the task once the delay has passed. The returned future is also the task future, so cancelling it before
+	 * then means the task is never started, and cancelling it after cancels the started task.
+	 */
+	private static <T> LocateTask<T> deferredTask(
+		LocateFeature feature,
+		ServerLevel level,
+		long delayNanos,
+		Supplier<LocateTask<T>> start
+	) {
+		CompletableFuture<T> deferred = new CompletableFuture<>();
+		LocateProgress progress = new LocateProgress();
+		submitLater(feature, delayNanos, () -> {
+			if (deferred.isDone()) {
+				return;
 			}
+			LocateTask<T> task = start.get();
+			task.progress().listen(progress::report);
+			task.completableFuture().whenComplete((result, throwable) -> {
+				if (throwable != null) deferred.completeExceptionally(throwable);
+				else deferred.complete(result);
+			});
+			deferred.whenComplete((ignored, ignoredThrowable) -> {
+				if (deferred.isCancelled()) task.cancel();
+			});
+		}, deferred::completeExceptionally);
+		return new LocateTask<>(level.getServer(), deferred, deferred, progress);
+	}
+
+	/*
+	 * Runs the submit once the delay has passed, as long as the executor that was running when it was deferred still
+	 * is. If the server stopped in the meantime, it's rejected rather than starting an executor up again for it. The
+	 * lock is held while submitting so the executor can't be shut down part way through.
+	 */
+	private static void submitLater(
+		LocateFeature feature,
+		long delayNanos,
+		Runnable submit,
+		Consumer<RejectedExecutionException> onRejected
+	) {
+		int generation;
+		synchronized (AsyncLocator.class) {
+			generation = executorGeneration;
 		}
+		CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+			RejectedExecutionException rejection;
+			synchronized (AsyncLocator.class) {
+				if (generation == executorGeneration && isExecutorActive()) {
+					try {
+						submit.run();
+						return;
+					} catch (RejectedExecutionException e) {
+						rejection = e;
+					}
+				} else {
+					rejection = new RejectedExecutionException(
+						"Locating executor was shut down - rejected deferred " + feature.id() + " locate task"
+					);
+				}
+			}
+			ALConstants.logDebug("Deferred {} locate task was rejected: {}", feature.id(), rejection.getMessage());
+			onRejected.accept(rejection);
+		});
 	}
 
 	private static void doLocateChunkGenerator(
+		LocateFeature feature,
 		CompletableFuture<Pair<BlockPos, Holder<Structure>>> completableFuture,
+		CancellationToken token,
+		LocateProgress progress,
 		ServerLevel level,
 		HolderSet<Structure> structureSet,
 		BlockPos pos,
 		int searchRadius,
-		boolean skipExistingChunks
+		boolean skipExistingChunks,
+		@Nullable LocateResultCache.Query query
 	) {
 		try {
 			ALConstants.logDebug(
@@ -192,8 +704,9 @@ public class AsyncLocator {
 				structureSet, level, pos, searchRadius
 			);
 			long start = System.nanoTime();
-			Pair<BlockPos, Holder<Structure>> foundPair = level.getChunkSource().getGenerator()
-				.findNearestMapStructure(level, structureSet, pos, searchRadius, skipExistingChunks);
+			Pair<BlockPos, Holder<Structure>> foundPair = StructureSearch.findNearestMapStructure(
+				level, structureSet, pos, searchRadius, skipExistingChunks, token, progress
+			);
 			String time = NumberFormat.getNumberInstance().format(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 			if (foundPair == null)
 				ALConstants.logInfo("No {} found (took {}ms)", structureSet, time);
@@ -201,7 +714,13 @@ public class AsyncLocator {
 				ALConstants.logInfo("Found {} at {} (took {}ms)",
 					foundPair.getSecond().value().getClass().getSimpleName(), foundPair.getFirst(), time
 				);
+			if (query != null) {
+				LocateResultCache.put(level, query, pos, searchRadius, foundPair);
+			}
+			LocateMetrics.recordOutcome(feature, foundPair == null ? LocateMetrics.Outcome.MISSED : LocateMetrics.Outcome.FOUND);
 			completableFuture.complete(foundPair);
+		} catch (CancellationException e) {
+			handleCancellation(feature, completableFuture, e, structureSet);
 		} catch (Throwable t) {
 			ALConstants.logError(t, "Exception while locating {} around {}", structureSet, pos);
 			try {
@@ -211,6 +730,55 @@ public class AsyncLocator {
 		}
 	}
 
+	private static void doLocateBatch(
+		LocateFeature feature,
+		List<CompletableFuture<Pair<BlockPos, Holder<Structure>>>> futures,
+		CancellationToken token,
+		List<LocateProgress> progress,
+		ServerLevel level,
+		List<HolderSet<Structure>> structureSets,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipExistingChunks,
+		List<LocateResultCache.Query> queries
+	) {
+		try {
+			ALConstants.logDebug(
+				"Trying to locate {} in {} around {} within {} chunks",
+				structureSets, level, pos, searchRadius
+			);
+			long start = System.nanoTime();
+			StructureSearch.findNearestMapStructures(
+				level, structureSets, pos, searchRadius, skipExistingChunks, token, progress,
+				(target, foundPair) -> {
+					if (queries.get(target) != null) {
+						LocateResultCache.put(level, queries.get(target), pos, searchRadius, foundPair);
+					}
+					LocateMetrics.recordOutcome(
+						feature, foundPair == null ? LocateMetrics.Outcome.MISSED : LocateMetrics.Outcome.FOUND
+					);
+					futures.get(target).complete(foundPair);
+				}
+			);
+			String time = NumberFormat.getNumberInstance().format(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			ALConstants.logInfo("Finished locating {} structure sets in one pass (took {}ms)", structureSets.size(), time);
+		} catch (CancellationException e) {
+			for (int i = 0; i < futures.size(); i++) {
+				if (!futures.get(i).isDone()) {
+					handleCancellation(feature, futures.get(i), e, structureSets.get(i));
+				}
+			}
+		} catch (Throwable t) {
+			ALConstants.logError(t, "Exception while locating {} around {}", structureSets, pos);
+			for (CompletableFuture<Pair<BlockPos, Holder<Structure>>> future : futures) {
+				try {
+					future.complete(null);
+				} catch (Throwable ignore) {
+				}
+			}
+		}
+	}
+
 	// Queues a task to locate a biome and returns a {@link LocateTask} with the futures for it.
 	public static LocateTask<Pair<BlockPos, Holder<Biome>>> locateBiome(
 		ServerLevel level,
@@ -219,31 +787,86 @@ public class AsyncLocator {
 		int searchRadius,
 		int horizontalStep,
 		int verticalStep
+	) {
+		return locateBiome(LocateFeature.OTHER, null, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep);
+	}
+
+	// Same as the above, but queued with the priority of the given feature and counted against the source's quota for it
+	public static LocateTask<Pair<BlockPos, Holder<Biome>>> locateBiome(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		ResourceOrTagArgument.Result<Biome> biomeResult,
+		BlockPos pos,
+		int searchRadius,
+		int horizontalStep,
+		int verticalStep
 	) {
 		ALConstants.logDebug(
 			"Creating locate task for biomes {} in {} around {} within {} blocks",
 			biomeResult.asPrintable(), level, pos, searchRadius
 		);
+		long requestedNanos = System.nanoTime();
+		return tracked(
+			feature,
+			level,
+			requestedNanos,
+			requestBiome(feature, source, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep)
+		);
+	}
 
-		ExecutorService executor;
-		synchronized (AsyncLocator.class) {
-			executor = LOCATING_EXECUTOR_SERVICE;
-			if (executor == null || executor.isShutdown()) {
-				ALConstants.logWarn("Locating executor service not initialized or not active: creating lazily");
-				setupExecutorService();
-				executor = LOCATING_EXECUTOR_SERVICE;
-			}
+	private static LocateTask<Pair<BlockPos, Holder<Biome>>> requestBiome(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		ResourceOrTagArgument.Result<Biome> biomeResult,
+		BlockPos pos,
+		int searchRadius,
+		int horizontalStep,
+		int verticalStep
+	) {
+		LocateQuotas.Permit permit = LocateQuotas.acquire(feature, source, !feature.isCommand());
+		if (permit.refused()) {
+			return rejectedTask(level, new LocateQuotaExceededException(feature, source, permit.delayNanos()));
+		}
+		if (permit.delayNanos() > 0) {
+			return deferredTask(
+				feature,
+				level,
+				permit.delayNanos(),
+				() -> submitBiomeSearch(feature, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep)
+			);
 		}
+		return submitBiomeSearch(feature, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep);
+	}
 
+	private static LocateTask<Pair<BlockPos, Holder<Biome>>> submitBiomeSearch(
+		LocateFeature feature,
+		ServerLevel level,
+		ResourceOrTagArgument.Result<Biome> biomeResult,
+		BlockPos pos,
+		int searchRadius,
+		int horizontalStep,
+		int verticalStep
+	) {
 		CompletableFuture<Pair<BlockPos, Holder<Biome>>> completableFuture = new CompletableFuture<>();
-		Future<?> future = executor.submit(
-			() -> doLocateBiome(completableFuture, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep)
+		CancellationToken token = newToken(completableFuture);
+		LocateProgress progress = new LocateProgress();
+		Future<?> future = getExecutor().submit(
+			feature,
+			() -> doLocateBiome(
+				feature, completableFuture, token, progress, level, biomeResult, pos, searchRadius, horizontalStep, verticalStep
+			),
+			() -> rejectTask(completableFuture, feature)
 		);
-		return new LocateTask<>(level.getServer(), completableFuture, future);
+		return new LocateTask<>(level.getServer(), completableFuture, future, progress);
 	}
 
 	private static void doLocateBiome(
+		LocateFeature feature,
 		CompletableFuture<Pair<BlockPos, Holder<Biome>>> completableFuture,
+		CancellationToken token,
+		LocateProgress progress,
 		ServerLevel level,
 		ResourceOrTagArgument.Result<Biome> biomeResult,
 		BlockPos pos,
@@ -258,13 +881,15 @@ public class AsyncLocator {
 			);
 			long start = System.nanoTime();
 
-			// Call the vanilla method with result directly
-			Pair<BlockPos, Holder<Biome>> foundPair = level.findClosestBiome3d(
+			Pair<BlockPos, Holder<Biome>> foundPair = BiomeSearch.findClosestBiome3d(
+				level,
 				biomeResult,
 				pos,
 				searchRadius,
 				horizontalStep,
-				verticalStep
+				verticalStep,
+				token,
+				progress
 			);
 
 			String time = NumberFormat.getNumberInstance().format(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
@@ -275,7 +900,10 @@ public class AsyncLocator {
 					foundPair.getSecond().value().getClass().getSimpleName(), foundPair.getFirst(), time
 				);
 			}
+			LocateMetrics.recordOutcome(feature, foundPair == null ? LocateMetrics.Outcome.MISSED : LocateMetrics.Outcome.FOUND);
 			completableFuture.complete(foundPair);
+		} catch (CancellationException e) {
+			handleCancellation(feature, completableFuture, e, biomeResult.asPrintable());
 		} catch (Throwable t) {
 			ALConstants.logError(t, "Exception while locating biomes {} around {}", biomeResult.asPrintable(), pos);
 			try {
@@ -285,36 +913,118 @@ public class AsyncLocator {
 		}
 	}
 
+	/*
+	 * A search that ran past its deadline gives up as if nothing was found. One that was abandoned has nobody waiting on
+	 * its result, so it just stops.
+	 */
+	private static void handleCancellation(
+		LocateFeature feature,
+		CompletableFuture<?> completableFuture,
+		CancellationException e,
+		Object target
+	) {
+		if (e instanceof CancellationToken.DeadlineExceededException) {
+			LocateMetrics.recordOutcome(feature, LocateMetrics.Outcome.TIMED_OUT);
+			ALConstants.logWarn(
+				"Gave up locating {} after {}s - it ran past the locate timeout",
+				target, Services.CONFIG.locateTimeoutSeconds()
+			);
+			completableFuture.complete(null);
+		} else {
+			ALConstants.logDebug("Stopped locating {} as the task was cancelled", target);
+			completableFuture.cancel(false);
+		}
+	}
+
 	/**
 	 * Holder of the futures for an async locate task as well as providing some helper functions.
 	 * The completableFuture will be completed once the call to
 	 * {@link ServerLevel#findNearestMapStructure(TagKey, BlockPos, int, boolean)} has completed, and will hold the
 	 * result of it.
-	 * The taskFuture is the future for the {@link Runnable} itself in the executor service.
+	 * The taskFuture is the future for the {@link Runnable} itself in the executor service. When the task shares a
+	 * search with other callers (see {@link LocateCoalescer}), it's this caller's handle on the shared search instead.
+	 * The progress is told each time the search finishes a radius band without finding anything (see
+	 * {@link LocateProgress}).
 	 */
-	public record LocateTask<T>(MinecraftServer server, CompletableFuture<T> completableFuture, Future<?> taskFuture) {
+	public record LocateTask<T>(
+		MinecraftServer server,
+		CompletableFuture<T> completableFuture,
+		Future<?> taskFuture,
+		LocateProgress progress
+	) {
+		// For tasks that don't report progress
+		public LocateTask(MinecraftServer server, CompletableFuture<T> completableFuture, Future<?> taskFuture) {
+			this(server, completableFuture, taskFuture, new LocateProgress());
+		}
+
 		/**
 		 * Helper function that calls {@link CompletableFuture#thenAccept(Consumer)} with the given action.
 		 * Bear in mind that the action will be executed from the task's thread. If you intend to change any game data,
 		 * it's strongly advised you use {@link #thenOnServerThread(Consumer)} instead so that it's queued and executed
 		 * on the main server thread instead.
+		 * If the task gets rejected, the action is given null as if nothing was found.
 		 */
 		public LocateTask<T> then(Consumer<T> action) {
-			completableFuture.thenAccept(action);
+			completableFuture.whenComplete((result, throwable) -> {
+				if (throwable == null) action.accept(result);
+				else if (isRejected(throwable)) action.accept(null);
+			});
 			return this;
 		}
 
+		/**
+		 * Helper function that returns a task for the result of the given function applied to this one's result, for
+		 * work that only depends on the result and is too heavy for the server thread. The function runs on the task's
+		 * thread as soon as the result is found, or on a background thread if the result was already there, and never
+		 * on the server thread. Rejections are passed through without calling it.
+		 */
+		public <U> LocateTask<U> thenApplyOffThread(Function<T, U> function) {
+			return new LocateTask<>(
+				server,
+				completableFuture.thenCompose(result -> server.isSameThread()
+					? CompletableFuture.supplyAsync(() -> function.apply(result), Util.backgroundExecutor())
+					: CompletableFuture.completedFuture(function.apply(result))),
+				taskFuture,
+				progress
+			);
+		}
+
 		/**
 		 * Helper function that calls {@link CompletableFuture#thenAccept(Consumer)} with the given action on the server
-		 * thread.
+		 * thread. Actions are queued in {@link ResultQueue} and run at the end of a tick, within its time budget.
+		 * If the task gets rejected, the action is given null as if nothing was found.
 		 */
 		public LocateTask<T> thenOnServerThread(Consumer<T> action) {
-			completableFuture.thenAccept(pos -> server.submit(() -> action.accept(pos)));
+			return thenOnServerThread(action, rejection -> action.accept(null));
+		}
+
+		/**
+		 * Same as {@link #thenOnServerThread(Consumer)}, but runs onRejected on the server thread instead of the action if
+		 * the task gets rejected because the queue is full or its source is over quota.
+		 */
+		public LocateTask<T> thenOnServerThread(Consumer<T> action, Consumer<RejectedExecutionException> onRejected) {
+			completableFuture.whenComplete((result, throwable) -> {
+				if (throwable == null) ResultQueue.submit(server, () -> action.accept(result));
+				else if (isRejected(throwable)) ResultQueue.submit(server, () -> onRejected.accept(asRejection(throwable)));
+			});
+			return this;
+		}
+
+		/**
+		 * Helper function that runs the action on the server thread each time the search finishes another radius band
+		 * without finding anything, so callers can show how far it's got. Bands finished after the task completes
+		 * aren't passed on.
+		 */
+		public LocateTask<T> onProgressOnServerThread(Consumer<LocateProgress.Stage> action) {
+			progress.listen(stage -> server.submit(() -> {
+				if (!completableFuture.isDone()) action.accept(stage);
+			}));
 			return this;
 		}
 
 		/**
 		 * Helper function that cancels both completableFuture and taskFuture.
+		 * A search that's already running stops at its next cancellation check and frees up its thread.
 		 */
 		public void cancel() {
 			taskFuture.cancel(true);
@@ -0,0 +1,134 @@
+package brightspark.asynclocator;
+
+import brightspark.asynclocator.locate.BiomeSampleCache;
+import brightspark.asynclocator.locate.LatencyHistogram;
+import brightspark.asynclocator.locate.LiveStructureIndex;
+import brightspark.asynclocator.locate.LocateCoalescer;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateMetrics;
+import brightspark.asynclocator.locate.LocateResultCache;
+import brightspark.asynclocator.locate.ResultQueue;
+import brightspark.asynclocator.logic.PendingMapJobs;
+import brightspark.asynclocator.platform.Services;
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /asynclocator command for operators.
+ * <p>
+ * /asynclocator stats shows the state of the executor, caches and structure index, and for each feature that's been
+ * used, its request rate, search outcomes and latency percentiles since the server started or the stats were last
+ * reset. /asynclocator stats reset starts them again, e.g. after changing locatorThreads.
+ */
+public class AsyncLocatorCommand {
+	private AsyncLocatorCommand() {}
+
+	public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+		dispatcher.register(Commands.literal(ALConstants.MOD_ID)
+			.requires(source -> source.hasPermission(Commands.LEVEL_GAMEMASTERS))
+			.then(Commands.literal("stats")
+				.executes(context -> showStats(context.getSource()))
+				.then(Commands.literal("reset")
+					.executes(context -> resetStats(context.getSource()))
+				)
+			)
+		);
+	}
+
+	private static int showStats(CommandSourceStack source) {
+		double minutes = Math.max(1, System.nanoTime() - LocateMetrics.sinceNanos()) / (double) TimeUnit.MINUTES.toNanos(1);
+		send(source, String.format(
+			Locale.ROOT,
+			"Async Locator stats over the last %.1f minutes:",
+			minutes
+		));
+		send(source, String.format(
+			Locale.ROOT,
+			"Executor (%s): %d/%d threads active, %d queued, %d rejected",
+			Services.CONFIG.executorMode(), AsyncLocator.activeThreads(), AsyncLocator.poolSize(),
+			AsyncLocator.queueDepth(), AsyncLocator.rejectedCount()
+		));
+		send(source, String.format(
+			Locale.ROOT,
+			"Cache: %d hits, %d misses - %d requests joined a running search",
+			LocateResultCache.hits(), LocateResultCache.misses(), LocateCoalescer.coalesced()
+		));
+		send(source, String.format(
+			Locale.ROOT,
+			"Biome samples: %d reused, %d evaluated - %d tiles kept",
+			BiomeSampleCache.hits(), BiomeSampleCache.misses(), BiomeSampleCache.tileCount()
+		));
+		LiveStructureIndex.Usage usage = LiveStructureIndex.usage();
+		send(source, String.format(
+			Locale.ROOT,
+			"Structure index: %d chunks, %d starts, ~%d KiB - %d chunk checks answered, %d chunks evicted",
+			usage.chunks(), usage.starts(), usage.bytes() / 1024, LiveStructureIndex.hits(), LiveStructureIndex.evicted()
+		));
+		send(source, String.format(Locale.ROOT, "Pending maps: %d", PendingMapJobs.size()));
+		send(source, String.format(
+			Locale.ROOT,
+			"Result queue: %d waiting, %d applied - last tick %d in %s, max %s, %d ticks carried over",
+			ResultQueue.size(), ResultQueue.applied(), ResultQueue.lastDrained(),
+			duration(TimeUnit.NANOSECONDS.toMicros(ResultQueue.lastDrainNanos())),
+			duration(TimeUnit.NANOSECONDS.toMicros(ResultQueue.maxDrainNanos())), ResultQueue.carriedOverTicks()
+		));
+
+		boolean any = false;
+		for (LocateFeature feature : LocateFeature.values()) {
+			LocateMetrics.FeatureMetrics metrics = LocateMetrics.get(feature);
+			if (metrics.requests() == 0 && metrics.searches() == 0) {
+				continue;
+			}
+			any = true;
+			send(source, String.format(
+				Locale.ROOT,
+				"%s: %d requests (%.1f/min), %d searches - %d found, %d missed, %d timed out",
+				feature.id(), metrics.requests(), metrics.requests() / minutes, metrics.searches(),
+				metrics.found(), metrics.missed(), metrics.timedOut()
+			));
+			send(source, "  queue wait " + percentiles(metrics.queueWait()));
+			send(source, "  execution " + percentiles(metrics.execution()));
+			send(source, "  end-to-end " + percentiles(metrics.endToEnd()));
+		}
+		if (!any) {
+			send(source, "No locates yet");
+		}
+		return 1;
+	}
+
+	private static int resetStats(CommandSourceStack source) {
+		LocateMetrics.reset();
+		source.sendSuccess(() -> Component.literal("Async Locator stats reset"), true);
+		return 1;
+	}
+
+	private static void send(CommandSourceStack source, String line) {
+		source.sendSuccess(() -> Component.literal(line), false);
+	}
+
+	private static String percentiles(LatencyHistogram histogram) {
+		if (histogram.count() == 0) {
+			return "-";
+		}
+		return "p50 " + duration(histogram.percentileMicros(0.5))
+			+ ", p90 " + duration(histogram.percentileMicros(0.9))
+			+ ", p99 " + duration(histogram.percentileMicros(0.99))
+			+ ", max " + duration(histogram.maxMicros())
+			+ " (" + histogram.count() + ")";
+	}
+
+	private static String duration(long micros) {
+		if (micros < 10_000) {
+			return String.format(Locale.ROOT, "%.1fms", micros / 1000D);
+		}
+		if (micros < 10_000_000) {
+			return (micros / 1000) + "ms";
+		}
+		return String.format(Locale.ROOT, "%.1fs", micros / 1_000_000D);
+	}
+}
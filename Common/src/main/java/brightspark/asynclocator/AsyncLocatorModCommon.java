@@ -1,13 +1,29 @@
 package brightspark.asynclocator;
 
+import brightspark.asynclocator.locate.LocateFeature;
 import brightspark.asynclocator.platform.Services;
 import brightspark.asynclocator.platform.services.ConfigHelper;
 
 public class AsyncLocatorModCommon {
 	public static void printConfigs() {
 		ConfigHelper config = Services.CONFIG;
+		StringBuilder priorities = new StringBuilder();
+		StringBuilder quotas = new StringBuilder();
+		for (LocateFeature feature : LocateFeature.values()) {
+			priorities.append("\n  ").append(feature.id()).append(": ").append(config.locatePriority(feature));
+			quotas.append("\n  ").append(feature.id()).append(": ").append(config.locateQuota(feature)).append("/min");
+		}
 		ALConstants.logInfo("Configs:" +
 			"\nLocator Threads: " + config.locatorThreads() +
+			"\nExecutor Mode: " + config.executorMode() +
+			"\nVirtual Thread Tasks: " + config.virtualThreadTasks() +
+			"\nParallel Search Threads: " + config.parallelSearchThreads() +
+			"\nMax Queued Tasks: " + config.maxQueuedTasks() +
+			"\nOverload Policy: " + config.overloadPolicy() +
+			"\nLocate Timeout Seconds: " + config.locateTimeoutSeconds() +
+			"\nPersistent Structure Store: " + config.persistentStructureStore() +
+			"\nLive Structure Index Chunks: " + config.liveStructureIndexChunks() +
+			"\nResult Apply Budget Micros: " + config.resultApplyBudgetMicros() +
 			"\nBiome Search Radius: " + config.biomeSearchRadius() +
 			"\nRemove Offer: " + config.removeOffer() +
 			"\nDolphin Treasure Enabled: " + config.dolphinTreasureEnabled() +
@@ -15,7 +31,9 @@ public class AsyncLocatorModCommon {
 			"\nExploration Map Enabled: " + config.explorationMapEnabled() +
 			"\nLocate Structure Command Enabled: " + config.locateCommandEnabled() +
 			"\nLocate Biome Command Enabled: " + config.locateBiomeCommandEnabled() +
-			"\nVillager Trade Enabled: " + config.villagerTradeEnabled()
+			"\nVillager Trade Enabled: " + config.villagerTradeEnabled() +
+			"\nPriorities:" + priorities +
+			"\nQuotas:" + quotas
 		);
 	}
 }
@@ -0,0 +1,229 @@
+package brightspark.asynclocator.locate;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.biome.Biome;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-level cache of the biomes sampled by biome searches, so searches around the same places don't have to evaluate
+ * the climate noise again.
+ * <p>
+ * A search samples every horizontal and vertical step away from its origin, so only searches whose origins are the same
+ * distance from the step grid sample the same positions. Samples are kept per grid of steps and offset from it, which
+ * means a sample is only ever reused at exactly the position it was taken, and searches give the same result as without
+ * the cache.
+ * <p>
+ * Samples are kept as biome ids in tiles of {@link #TILE_SIZE} by {@link #TILE_SIZE} columns of the grid, with every
+ * height of each column. Each level keeps tiles of up to {@link #MAX_SAMPLES_PER_LEVEL} samples, which is around 1000
+ * tiles at the locate command's steps, dropping the least recently used.
+ */
+public class BiomeSampleCache {
+	private static final int TILE_SHIFT = 4;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	// 2 bytes each
+	private static final int MAX_SAMPLES_PER_LEVEL = 1 << 21;
+	// Grid ids are kept in the top bits of tile keys, and biome ids are stored plus one in a short
+	private static final int MAX_GRIDS = 1 << 16;
+	private static final int MAX_BIOMES = Short.MAX_VALUE;
+
+	private static final Map<ServerLevel, BiomeSampleCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+
+	private final int minQuartY;
+	private final int quartHeight;
+	// Guarded by this
+	private final Long2ObjectLinkedOpenHashMap<short[]> tiles = new Long2ObjectLinkedOpenHashMap<>();
+	private long samples = 0;
+	private final Object2IntMap<GridKey> grids = new Object2IntOpenHashMap<>();
+	private final List<Holder<Biome>> palette = new ArrayList<>();
+	private final Reference2IntMap<Holder<Biome>> paletteIds = new Reference2IntOpenHashMap<>();
+
+	private BiomeSampleCache(ServerLevel level) {
+		this.minQuartY = QuartPos.fromBlock(level.getMinY());
+		this.quartHeight = QuartPos.fromBlock(level.getMaxY()) - minQuartY + 1;
+	}
+
+	/**
+	 * Gets the grid of samples a search from the origin with the given steps takes, or null if it can't be cached.
+	 *
+	 * @param ys The heights sampled in each column, in the order they're sampled
+	 */
+	public static @Nullable Grid grid(ServerLevel level, BlockPos origin, int horizontalStep, int verticalStep, int[] ys) {
+		// Steps that aren't whole quarts don't land on the same quarts from one column to the next
+		if (horizontalStep % QuartPos.SIZE != 0 || verticalStep % QuartPos.SIZE != 0) {
+			return null;
+		}
+		BiomeSampleCache cache = CACHES.computeIfAbsent(level, BiomeSampleCache::new);
+		int strideXZ = QuartPos.fromBlock(horizontalStep);
+		int strideY = QuartPos.fromBlock(verticalStep);
+		GridKey key = new GridKey(
+			strideXZ,
+			strideY,
+			Math.floorMod(QuartPos.fromBlock(origin.getX()), strideXZ),
+			Math.floorMod(QuartPos.fromBlock(origin.getY()), strideY),
+			Math.floorMod(QuartPos.fromBlock(origin.getZ()), strideXZ)
+		);
+		int[] yIndexes = new int[ys.length];
+		int ySlots = Math.floorDiv(cache.quartHeight - 1, strideY) + 1;
+		for (int i = 0; i < ys.length; i++) {
+			yIndexes[i] = Math.floorDiv(QuartPos.fromBlock(ys[i]) - cache.minQuartY, strideY);
+			if (yIndexes[i] < 0 || yIndexes[i] >= ySlots) {
+				return null;
+			}
+		}
+		int gridId;
+		synchronized (cache) {
+			gridId = cache.grids.getOrDefault(key, -1);
+			if (gridId == -1) {
+				if (cache.grids.size() >= MAX_GRIDS) {
+					return null;
+				}
+				gridId = cache.grids.size();
+				cache.grids.put(key, gridId);
+			}
+		}
+		return cache.new Grid(key, gridId, ySlots, yIndexes);
+	}
+
+	public static void clear() {
+		CACHES.clear();
+	}
+
+	public static long hits() {
+		return HITS.get();
+	}
+
+	public static long misses() {
+		return MISSES.get();
+	}
+
+	/**
+	 * The number of tiles kept over every level.
+	 */
+	public static int tileCount() {
+		List<BiomeSampleCache> caches;
+		synchronized (CACHES) {
+			caches = new ArrayList<>(CACHES.values());
+		}
+		int count = 0;
+		for (BiomeSampleCache cache : caches) {
+			synchronized (cache) {
+				count += cache.tiles.size();
+			}
+		}
+		return count;
+	}
+
+	private int biomeId(Holder<Biome> biome) {
+		int id = paletteIds.getOrDefault(biome, -1);
+		if (id == -1 && palette.size() < MAX_BIOMES) {
+			id = palette.size();
+			palette.add(biome);
+			paletteIds.put(biome, id);
+		}
+		return id;
+	}
+
+	private record GridKey(int strideXZ, int strideY, int phaseX, int phaseY, int phaseZ) {}
+
+	/**
+	 * The samples of one search's grid.
+	 */
+	public class Grid {
+		private final GridKey key;
+		private final long keyBits;
+		private final int ySlots;
+		private final int[] yIndexes;
+
+		private Grid(GridKey key, int gridId, int ySlots, int[] yIndexes) {
+			this.key = key;
+			this.keyBits = (long) gridId << 48;
+			this.ySlots = ySlots;
+			this.yIndexes = yIndexes;
+		}
+
+		/**
+		 * The biomes already sampled in the column, in the order of the heights the grid was made with, with null for
+		 * ones that haven't been.
+		 */
+		@SuppressWarnings("unchecked")
+		public Holder<Biome>[] read(int quartX, int quartZ) {
+			Holder<Biome>[] biomes = new Holder[yIndexes.length];
+			int cached = 0;
+			synchronized (BiomeSampleCache.this) {
+				short[] tile = tiles.getAndMoveToLast(tileKey(quartX, quartZ));
+				if (tile != null) {
+					int offset = columnOffset(quartX, quartZ);
+					for (int i = 0; i < yIndexes.length; i++) {
+						int id = tile[offset + yIndexes[i]] - 1;
+						if (id >= 0) {
+							biomes[i] = palette.get(id);
+							cached++;
+						}
+					}
+				}
+			}
+			HITS.addAndGet(cached);
+			return biomes;
+		}
+
+		/**
+		 * Keeps the sampled biomes of the column, as given by {@link #read}.
+		 *
+		 * @param sampled How many of them were newly sampled
+		 */
+		public void write(int quartX, int quartZ, Holder<Biome>[] biomes, int sampled) {
+			MISSES.addAndGet(sampled);
+			synchronized (BiomeSampleCache.this) {
+				long tileKey = tileKey(quartX, quartZ);
+				short[] tile = tiles.getAndMoveToLast(tileKey);
+				if (tile == null) {
+					tile = new short[TILE_SIZE * TILE_SIZE * ySlots];
+					tiles.putAndMoveToLast(tileKey, tile);
+					samples += tile.length;
+					while (samples > MAX_SAMPLES_PER_LEVEL && tiles.size() > 1) {
+						samples -= tiles.removeFirst().length;
+					}
+				}
+				int offset = columnOffset(quartX, quartZ);
+				for (int i = 0; i < yIndexes.length; i++) {
+					if (biomes[i] != null) {
+						int id = biomeId(biomes[i]);
+						if (id >= 0) {
+							tile[offset + yIndexes[i]] = (short) (id + 1);
+						}
+					}
+				}
+			}
+		}
+
+		// Columns of the grid are whole strides from its offset, so dividing by the stride always lands on one
+		private long tileKey(int quartX, int quartZ) {
+			long column = Math.floorDiv(quartX - key.phaseX(), key.strideXZ()) >> TILE_SHIFT;
+			long row = Math.floorDiv(quartZ - key.phaseZ(), key.strideXZ()) >> TILE_SHIFT;
+			return keyBits | (column & 0xFFFFFFL) << 24 | row & 0xFFFFFFL;
+		}
+
+		private int columnOffset(int quartX, int quartZ) {
+			int column = Math.floorDiv(quartX - key.phaseX(), key.strideXZ()) & (TILE_SIZE - 1);
+			int row = Math.floorDiv(quartZ - key.phaseZ(), key.strideXZ()) & (TILE_SIZE - 1);
+			return (row * TILE_SIZE + column) * ySlots;
+		}
+	}
+}
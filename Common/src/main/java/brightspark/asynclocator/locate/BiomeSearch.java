@@ -0,0 +1,297 @@
+package brightspark.asynclocator.locate;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.LevelReader;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.biome.FixedBiomeSource;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Port of {@link ServerLevel#findClosestBiome3d} that checks a {@link CancellationToken} between every sampled column,
+ * so a search that's no longer wanted stops straight away instead of running to the end of its radius.
+ * <p>
+ * Columns are sampled in the same spiral order as vanilla, so the result is the same. When parallel searching is turned
+ * on, the spiral is split into segments that threads take in order, so they work outwards together. The earliest column
+ * in the spiral with a match is kept as a shared bound - segments after it are skipped and scans past it stop, and the
+ * match at the earliest column is returned, as vanilla would.
+ * <p>
+ * Each radius band of steps searched without finding anything is reported to the {@link LocateProgress}, in blocks.
+ * <p>
+ * Biomes sampled are kept in the {@link BiomeSampleCache}, so later searches sampling the same positions don't
+ * evaluate the climate noise again.
+ * <p>
+ * Biome sources that override {@link BiomeSource#findClosestBiome3d}, like {@link FixedBiomeSource} or modded ones, are
+ * searched with their own method instead, as the port would give a different result. Those searches can't be cancelled
+ * part way and don't report progress.
+ */
+public class BiomeSearch {
+	// Columns per segment of the spiral, which is 16 rings worth near the origin
+	private static final int SEGMENT_SIZE = 1_024;
+	// Smaller searches finish too quickly to be worth splitting up
+	private static final int MIN_PARALLEL_STEPS = 32;
+
+	// Matched by parameters rather than name, as the name isn't the same at runtime on every loader
+	private static final Class<?>[] FIND_CLOSEST_PARAMETERS = {
+		BlockPos.class, int.class, int.class, int.class, Predicate.class, Climate.Sampler.class, LevelReader.class
+	};
+	private static final ClassValue<Boolean> OVERRIDES_FIND_CLOSEST = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			for (Class<?> c = type; c != null && c != BiomeSource.class; c = c.getSuperclass()) {
+				for (Method method : c.getDeclaredMethods()) {
+					if (!Modifier.isStatic(method.getModifiers())
+						&& Arrays.equals(method.getParameterTypes(), FIND_CLOSEST_PARAMETERS)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	};
+
+	private BiomeSearch() {}
+
+	public static @Nullable Pair<BlockPos, Holder<Biome>> findClosestBiome3d(
+		ServerLevel level,
+		Predicate<Holder<Biome>> biomePredicate,
+		BlockPos pos,
+		int searchRadius,
+		int horizontalStep,
+		int verticalStep,
+		CancellationToken token,
+		LocateProgress progress
+	) {
+		BiomeSource biomeSource = level.getChunkSource().getGenerator().getBiomeSource();
+		if (OVERRIDES_FIND_CLOSEST.get(biomeSource.getClass())) {
+			token.checkpoint();
+			return biomeSource.findClosestBiome3d(
+				pos, searchRadius, horizontalStep, verticalStep, biomePredicate,
+				level.getChunkSource().randomState().sampler(), level
+			);
+		}
+		Set<Holder<Biome>> biomes = biomeSource.possibleBiomes().stream()
+			.filter(biomePredicate)
+			.collect(Collectors.toUnmodifiableSet());
+		if (biomes.isEmpty()) {
+			return null;
+		}
+
+		Climate.Sampler sampler = level.getChunkSource().randomState().sampler();
+		int steps = Math.floorDiv(searchRadius, horizontalStep);
+		int[] ys = Mth.outFromOrigin(pos.getY(), level.getMinY() + 1, level.getMaxY() + 1, verticalStep).toArray();
+		BiomeSampleCache.Grid samples = BiomeSampleCache.grid(level, pos, horizontalStep, verticalStep, ys);
+		Column column = new Column(biomeSource, sampler, biomes, pos, horizontalStep, ys, samples);
+		Bands bands = new Bands(steps, horizontalStep, progress);
+
+		ForkJoinPool pool = steps < MIN_PARALLEL_STEPS ? null : SearchPool.get();
+		if (pool != null) {
+			return new ParallelSpiral(column, steps, token, bands).search(pool);
+		}
+
+		long index = 0;
+		for (BlockPos.MutableBlockPos offset : spiral(steps)) {
+			token.checkpoint();
+			Pair<BlockPos, Holder<Biome>> found = column.sample(offset);
+			if (found != null) {
+				return found;
+			}
+			bands.searchedUpTo(++index);
+		}
+		return null;
+	}
+
+	private static Iterable<BlockPos.MutableBlockPos> spiral(int steps) {
+		return BlockPos.spiralAround(BlockPos.ZERO, steps, Direction.EAST, Direction.SOUTH);
+	}
+
+	private record Column(
+		BiomeSource biomeSource,
+		Climate.Sampler sampler,
+		Set<Holder<Biome>> biomes,
+		BlockPos pos,
+		int horizontalStep,
+		int[] ys,
+		@Nullable BiomeSampleCache.Grid samples
+	) {
+		// The first matching biome in the column at the spiral offset, from the origin's height outwards
+		private @Nullable Pair<BlockPos, Holder<Biome>> sample(BlockPos offset) {
+			int x = pos.getX() + offset.getX() * horizontalStep;
+			int z = pos.getZ() + offset.getZ() * horizontalStep;
+			int quartX = QuartPos.fromBlock(x);
+			int quartZ = QuartPos.fromBlock(z);
+			Holder<Biome>[] known = samples == null ? null : samples.read(quartX, quartZ);
+			int sampled = 0;
+			Pair<BlockPos, Holder<Biome>> found = null;
+			for (int i = 0; i < ys.length; i++) {
+				Holder<Biome> biome = known == null ? null : known[i];
+				if (biome == null) {
+					biome = biomeSource.getNoiseBiome(quartX, QuartPos.fromBlock(ys[i]), quartZ, sampler);
+					if (known != null) {
+						known[i] = biome;
+						sampled++;
+					}
+				}
+				if (biomes.contains(biome)) {
+					found = Pair.of(new BlockPos(x, ys[i], z), biome);
+					break;
+				}
+			}
+			if (sampled > 0) {
+				samples.write(quartX, quartZ, known, sampled);
+			}
+			return found;
+		}
+	}
+
+	/*
+	 * The spiral covers the square of each ring before moving out to the next, so the first (2r + 1)^2 columns are every
+	 * column up to r steps out.
+	 */
+	private static class Bands {
+		private final int steps;
+		private final int horizontalStep;
+		private final LocateProgress progress;
+		private int ring = 0;
+
+		private Bands(int steps, int horizontalStep, LocateProgress progress) {
+			this.steps = steps;
+			this.horizontalStep = horizontalStep;
+			this.progress = progress;
+		}
+
+		// Called with how many columns from the start of the spiral have been searched without finding anything
+		private synchronized void searchedUpTo(long columns) {
+			while (ring < steps && columns >= columnsUpTo(ring + 1)) {
+				ring++;
+				if (LocateProgress.isBand(ring, steps)) {
+					progress.report(new LocateProgress.Stage(ring * horizontalStep, steps * horizontalStep));
+				}
+			}
+		}
+
+		private static long columnsUpTo(int ring) {
+			long side = 2L * ring + 1;
+			return side * side;
+		}
+	}
+
+	private static class ParallelSpiral {
+		private final Column column;
+		private final int steps;
+		private final CancellationToken token;
+		private final Bands bands;
+		private final AtomicInteger nextSegment = new AtomicInteger();
+		private final AtomicLong firstHitIndex = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicReference<Pair<BlockPos, Holder<Biome>>> firstHit = new AtomicReference<>();
+		private volatile boolean stopped = false;
+		// Segments searched without finding anything, and how many from the start of the spiral have been
+		private final BitSet missedSegments = new BitSet();
+		private int missedUpTo = 0;
+
+		private ParallelSpiral(Column column, int steps, CancellationToken token, Bands bands) {
+			this.column = column;
+			this.steps = steps;
+			this.token = token;
+			this.bands = bands;
+		}
+
+		private @Nullable Pair<BlockPos, Holder<Biome>> search(ForkJoinPool pool) {
+			List<ForkJoinTask<?>> helpers = new ArrayList<>(pool.getParallelism());
+			for (int i = 0; i < pool.getParallelism(); i++) {
+				helpers.add(pool.submit(this::work));
+			}
+			try {
+				work();
+				for (ForkJoinTask<?> helper : helpers) {
+					helper.join();
+				}
+			} finally {
+				stopped = true;
+			}
+			return firstHit.get();
+		}
+
+		/*
+		 * Each thread walks its own spiral iterator forwards to the segments it takes. Segments are taken in order, so
+		 * the iterator never has to go backwards.
+		 */
+		private void work() {
+			Iterator<BlockPos.MutableBlockPos> spiral = spiral(steps).iterator();
+			long index = -1;
+			try {
+				while (!stopped) {
+					int segment = nextSegment.getAndIncrement();
+					long start = (long) segment * SEGMENT_SIZE;
+					long end = start + SEGMENT_SIZE;
+					if (start > firstHitIndex.get()) {
+						return;
+					}
+					while (index < end - 1 && spiral.hasNext()) {
+						BlockPos offset = spiral.next();
+						index++;
+						if (index < start) {
+							continue;
+						}
+						token.checkpoint();
+						if (stopped || index > firstHitIndex.get()) {
+							return;
+						}
+						Pair<BlockPos, Holder<Biome>> found = column.sample(offset);
+						if (found != null) {
+							offerHit(index, found);
+							return;
+						}
+					}
+					missedSegment(segment);
+					if (!spiral.hasNext()) {
+						return;
+					}
+				}
+			} catch (RuntimeException e) {
+				stopped = true;
+				throw e;
+			}
+		}
+
+		private void missedSegment(int segment) {
+			long columns;
+			synchronized (missedSegments) {
+				missedSegments.set(segment);
+				missedUpTo = missedSegments.nextClearBit(missedUpTo);
+				columns = (long) missedUpTo * SEGMENT_SIZE;
+			}
+			bands.searchedUpTo(columns);
+		}
+
+		private synchronized void offerHit(long index, Pair<BlockPos, Holder<Biome>> found) {
+			if (index < firstHitIndex.get()) {
+				firstHit.set(found);
+				firstHitIndex.set(index);
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package brightspark.asynclocator.locate;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Checked by searches between units of work so abandoned searches give up their thread straight away.
+ * <p>
+ * A search is abandoned once its result future is done (e.g. cancelled, or completed by a timeout), its thread has been
+ * interrupted (e.g. the task was cancelled, or the executor is shutting down), or its deadline has passed.
+ */
+public final class CancellationToken {
+	/**
+	 * A token that's never cancelled, for searches that have to run to completion.
+	 */
+	public static final CancellationToken NONE = new CancellationToken(null, 0);
+
+	private final @Nullable Future<?> result;
+	private final long deadlineNanos;
+
+	/**
+	 * @param result The future the search's result will go to
+	 * @param timeoutNanos How long the search can take from now, or 0 for no deadline
+	 */
+	public CancellationToken(@Nullable Future<?> result, long timeoutNanos) {
+		this.result = result;
+		this.deadlineNanos = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+	}
+
+	/**
+	 * Throws if the search should stop.
+	 *
+	 * @throws CancellationException If the search was abandoned
+	 * @throws DeadlineExceededException If the search ran past its deadline
+	 */
+	public void checkpoint() {
+		if (this == NONE) {
+			return;
+		}
+		if (Thread.currentThread().isInterrupted() || (result != null && result.isDone())) {
+			throw new CancellationException("Locate task was cancelled");
+		}
+		if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+			throw new DeadlineExceededException();
+		}
+	}
+
+	/**
+	 * Thrown when a search runs past its deadline.
+	 */
+	public static class DeadlineExceededException extends CancellationException {
+		public DeadlineExceededException() {
+			super("Locate task ran past its deadline");
+		}
+	}
+}
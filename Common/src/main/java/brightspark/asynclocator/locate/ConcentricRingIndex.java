@@ -0,0 +1,220 @@
+package brightspark.asynclocator.locate;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+
+/**
+ * Per-level index of the candidate chunks of a concentric rings placement, such as strongholds. The candidates are
+ * fixed by the seed, so the index is built once on first use and kept until the server stops.
+ * <p>
+ * Candidates are held in a 2D tree by the centre of their chunk, and given out nearest first to an origin. Vanilla goes
+ * through every candidate in list order and checks any that's closer than the nearest structure found so far, so the
+ * structure it ends up with is the one that's nearest, and earliest in the list out of those the same distance away.
+ * Ties are given out in list order here too, so checking candidates in this order until one has a structure gives the
+ * same result, without checking any further away.
+ */
+public class ConcentricRingIndex {
+	private static final Map<ServerLevel, Map<ConcentricRingsStructurePlacement, ConcentricRingIndex>> INDEXES =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
+	// Candidates in tree order - the node for each range is at its middle, with the two halves either side of it
+	private final ChunkPos[] chunks;
+	private final int[] order;
+	private final long[] xs;
+	private final long[] zs;
+
+	private ConcentricRingIndex(List<ChunkPos> ringPositions) {
+		int size = ringPositions.size();
+		Integer[] indexes = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			indexes[i] = i;
+		}
+		build(ringPositions, indexes, 0, size, 0);
+
+		chunks = new ChunkPos[size];
+		order = new int[size];
+		xs = new long[size];
+		zs = new long[size];
+		for (int i = 0; i < size; i++) {
+			ChunkPos chunkPos = ringPositions.get(indexes[i]);
+			chunks[i] = chunkPos;
+			order[i] = indexes[i];
+			xs[i] = SectionPos.sectionToBlockCoord(chunkPos.x, 8);
+			zs[i] = SectionPos.sectionToBlockCoord(chunkPos.z, 8);
+		}
+	}
+
+	/**
+	 * Gets the index for the placement in the level, or null if the level doesn't have the placement.
+	 */
+	public static @Nullable ConcentricRingIndex get(ServerLevel level, ConcentricRingsStructurePlacement placement) {
+		// Waits for the ring positions to be worked out if they haven't been yet, so isn't done while holding the lock
+		List<ChunkPos> ringPositions = level.getChunkSource().getGeneratorState().getRingPositionsFor(placement);
+		if (ringPositions == null) {
+			return null;
+		}
+		synchronized (INDEXES) {
+			return INDEXES.computeIfAbsent(level, l -> new HashMap<>())
+				.computeIfAbsent(placement, p -> new ConcentricRingIndex(ringPositions));
+		}
+	}
+
+	public static void clear() {
+		INDEXES.clear();
+	}
+
+	/**
+	 * The candidate chunks, nearest to the position first.
+	 */
+	public Iterable<ChunkPos> nearestFirst(BlockPos pos) {
+		return () -> new NearestFirst(pos.getX(), pos.getZ());
+	}
+
+	private static void build(List<ChunkPos> ringPositions, Integer[] indexes, int from, int to, int depth) {
+		if (to - from < 2) {
+			return;
+		}
+		Comparator<Integer> byAxis = depth % 2 == 0
+			? Comparator.comparingInt(i -> ringPositions.get(i).x)
+			: Comparator.comparingInt(i -> ringPositions.get(i).z);
+		Arrays.sort(indexes, from, to, byAxis);
+		int middle = (from + to) >>> 1;
+		build(ringPositions, indexes, from, middle, depth + 1);
+		build(ringPositions, indexes, middle + 1, to, depth + 1);
+	}
+
+	/*
+	 * Best first walk of the tree. Subtrees are queued by the closest their bounds could be to the origin, and go ahead
+	 * of candidates the same distance away, so a candidate only comes out once nothing left could come before it.
+	 */
+	private class NearestFirst implements Iterator<ChunkPos> {
+		private final long x;
+		private final long z;
+		private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+		private @Nullable ChunkPos next;
+
+		private NearestFirst(long x, long z) {
+			this.x = x;
+			this.z = z;
+			if (chunks.length > 0) {
+				queue.add(new Subtree(0, chunks.length, 0, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !queue.isEmpty()) {
+				Entry entry = queue.poll();
+				if (entry instanceof Candidate candidate) {
+					next = chunks[candidate.node];
+				} else {
+					expand((Subtree) entry);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public ChunkPos next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ChunkPos result = next;
+			next = null;
+			return result;
+		}
+
+		private void expand(Subtree subtree) {
+			int middle = (subtree.from + subtree.to) >>> 1;
+			queue.add(new Candidate(middle));
+			boolean alongX = subtree.depth % 2 == 0;
+			long split = alongX ? xs[middle] : zs[middle];
+			if (middle > subtree.from) {
+				queue.add(alongX
+					? new Subtree(subtree.from, middle, subtree.depth + 1, subtree.minX, split, subtree.minZ, subtree.maxZ)
+					: new Subtree(subtree.from, middle, subtree.depth + 1, subtree.minX, subtree.maxX, subtree.minZ, split));
+			}
+			if (middle + 1 < subtree.to) {
+				queue.add(alongX
+					? new Subtree(middle + 1, subtree.to, subtree.depth + 1, split, subtree.maxX, subtree.minZ, subtree.maxZ)
+					: new Subtree(middle + 1, subtree.to, subtree.depth + 1, subtree.minX, subtree.maxX, split, subtree.maxZ));
+			}
+		}
+
+		private static long axisDist(long value, long min, long max) {
+			return value < min ? min - value : value > max ? value - max : 0;
+		}
+
+		private abstract static sealed class Entry implements Comparable<Entry> permits Subtree, Candidate {
+			long distSqr;
+
+			// Subtrees sort before candidates, and candidates by their place in the list
+			abstract long tieBreak();
+
+			@Override
+			public int compareTo(Entry other) {
+				int result = Long.compare(distSqr, other.distSqr);
+				return result != 0 ? result : Long.compare(tieBreak(), other.tieBreak());
+			}
+		}
+
+		private final class Subtree extends Entry {
+			private final int from;
+			private final int to;
+			private final int depth;
+			private final long minX;
+			private final long maxX;
+			private final long minZ;
+			private final long maxZ;
+
+			private Subtree(int from, int to, int depth, long minX, long maxX, long minZ, long maxZ) {
+				this.from = from;
+				this.to = to;
+				this.depth = depth;
+				this.minX = minX;
+				this.maxX = maxX;
+				this.minZ = minZ;
+				this.maxZ = maxZ;
+				long dx = axisDist(x, minX, maxX);
+				long dz = axisDist(z, minZ, maxZ);
+				this.distSqr = dx * dx + dz * dz;
+			}
+
+			@Override
+			long tieBreak() {
+				return -1;
+			}
+		}
+
+		private final class Candidate extends Entry {
+			private final int node;
+
+			private Candidate(int node) {
+				this.node = node;
+				long dx = xs[node] - x;
+				long dz = zs[node] - z;
+				this.distSqr = dx * dx + dz * dz;
+			}
+
+			@Override
+			long tieBreak() {
+				return order[node];
+			}
+		}
+	}
+}
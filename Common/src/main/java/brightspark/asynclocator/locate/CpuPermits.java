@@ -0,0 +1,47 @@
+package brightspark.asynclocator.locate;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many locate tasks can be doing CPU work at once when they run on virtual threads.
+ * <p>
+ * A task holds a permit while it runs, and gives it up while it waits on something else, like the server loading or
+ * generating a chunk, so another task can use the CPU in the meantime. Tasks not running with a permit, such as those
+ * on the fixed pool or the helpers of a parallel search, aren't affected.
+ */
+public class CpuPermits {
+	private static final ThreadLocal<Semaphore> HELD = new ThreadLocal<>();
+
+	private CpuPermits() {}
+
+	// Waits for a permit for the task about to run on this thread
+	static void acquire(Semaphore permits) {
+		permits.acquireUninterruptibly();
+		HELD.set(permits);
+	}
+
+	static void release() {
+		Semaphore permits = HELD.get();
+		if (permits != null) {
+			HELD.remove();
+			permits.release();
+		}
+	}
+
+	/**
+	 * Runs the blocking call without holding this thread's permit, if it has one, and waits for a permit again after.
+	 */
+	public static <T> T blocking(Supplier<T> call) {
+		Semaphore permits = HELD.get();
+		if (permits == null) {
+			return call.get();
+		}
+		permits.release();
+		try {
+			return call.get();
+		} finally {
+			permits.acquireUninterruptibly();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package brightspark.asynclocator.locate;
+
+/**
+ * What the locating executor runs its tasks on.
+ */
+public enum ExecutorMode {
+	// A fixed pool of locatorThreads platform threads, which sit idle whenever a search waits on chunks
+	FIXED,
+	/*
+	 * Virtual threads, so a search waiting on chunks doesn't hold up a platform thread. How many searches can be doing
+	 * CPU work at once is still capped by locatorThreads, through CpuPermits.
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,85 @@
+package brightspark.asynclocator.locate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations, with microsecond resolution.
+ * <p>
+ * Buckets double in size every four buckets, so recording is a couple of bit operations and an atomic increment, and
+ * percentiles are within 25% of the true value however long the durations are.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Up to 2^40 micros, which is about 12 days - anything longer goes into the last bucket
+	private static final int MAX_BITS = 40;
+	private static final int BUCKETS = MAX_BITS * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		buckets.incrementAndGet(bucketOf(micros));
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	public long meanMicros() {
+		long count = count();
+		return count == 0 ? 0 : totalMicros.sum() / count;
+	}
+
+	public long maxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * The upper bound of the bucket the given fraction of recorded durations fall within, capped at the longest
+	 * duration recorded, or 0 if nothing has been recorded.
+	 */
+	public long percentileMicros(double fraction) {
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) {
+				return Math.min(upperBoundOf(i), maxMicros());
+			}
+		}
+		return maxMicros();
+	}
+
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min(BUCKETS - 1, (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub);
+	}
+
+	// The largest value that goes into the bucket
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int msb = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (msb - SUB_BUCKET_BITS)) - 1;
+	}
+}
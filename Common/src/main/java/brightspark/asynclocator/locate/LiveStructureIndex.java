@@ -0,0 +1,162 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.platform.Services;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureCheckResult;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of the structure starts of chunks, fed as chunks get their structure starts during generation or are
+ * loaded from disk with them.
+ * <p>
+ * Each level maps chunk positions to the structures that have a valid start in the chunk. Chunks without any are kept
+ * too, with an empty bucket, as knowing there's nothing there lets a search skip the chunk just as well. Starts don't
+ * change once a chunk has them, so an entry never goes stale. Searches ask about each candidate chunk before checking
+ * it, and only check chunks the index doesn't know about.
+ * <p>
+ * Each level holds at most {@link brightspark.asynclocator.platform.services.ConfigHelper#liveStructureIndexChunks()}
+ * chunks, forgetting the ones added longest ago first.
+ */
+public class LiveStructureIndex {
+	private static final Structure[] NO_STARTS = new Structure[0];
+	// Rough cost of a chunk in the map (key, value, links and free slots), and of a non-empty bucket and each start in it
+	private static final int BYTES_PER_CHUNK = 40;
+	private static final int BYTES_PER_BUCKET = 16;
+	private static final int BYTES_PER_START = 4;
+
+	private static final Map<ServerLevel, LiveStructureIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong EVICTED = new AtomicLong();
+
+	// Guarded by this
+	private final Long2ObjectLinkedOpenHashMap<Structure[]> chunks = new Long2ObjectLinkedOpenHashMap<>();
+	private long buckets = 0;
+	private long starts = 0;
+
+	private LiveStructureIndex() {}
+
+	/**
+	 * Gets the index for the level, or null if it's turned off.
+	 */
+	public static @Nullable LiveStructureIndex get(ServerLevel level) {
+		if (Services.CONFIG.liveStructureIndexChunks() <= 0) {
+			return null;
+		}
+		return INDEXES.computeIfAbsent(level, l -> new LiveStructureIndex());
+	}
+
+	/**
+	 * Records the structure starts of a chunk that's just got them.
+	 */
+	public static void onStructureStartsAvailable(ServerLevel level, ChunkAccess chunk) {
+		LiveStructureIndex index = get(level);
+		if (index != null) {
+			index.record(chunk.getPos(), chunk.getAllStarts());
+		}
+	}
+
+	public static void clear() {
+		INDEXES.clear();
+	}
+
+	public static long hits() {
+		return HITS.get();
+	}
+
+	public static long evicted() {
+		return EVICTED.get();
+	}
+
+	/**
+	 * The number of chunks, the number of structure starts in them, and roughly how many bytes they take, over every
+	 * level.
+	 */
+	public static Usage usage() {
+		List<LiveStructureIndex> indexes;
+		synchronized (INDEXES) {
+			indexes = new ArrayList<>(INDEXES.values());
+		}
+		long chunkCount = 0;
+		long startCount = 0;
+		long bytes = 0;
+		for (LiveStructureIndex index : indexes) {
+			synchronized (index) {
+				chunkCount += index.chunks.size();
+				startCount += index.starts;
+				bytes += index.chunks.size() * (long) BYTES_PER_CHUNK
+					+ index.buckets * BYTES_PER_BUCKET
+					+ index.starts * BYTES_PER_START;
+			}
+		}
+		return new Usage(chunkCount, startCount, bytes);
+	}
+
+	public void record(ChunkPos chunkPos, Map<Structure, StructureStart> chunkStarts) {
+		Structure[] bucket = chunkStarts.entrySet().stream()
+			.filter(entry -> entry.getValue().isValid())
+			.map(Map.Entry::getKey)
+			.toArray(Structure[]::new);
+		if (bucket.length == 0) {
+			bucket = NO_STARTS;
+		}
+		int maxChunks = Services.CONFIG.liveStructureIndexChunks();
+		synchronized (this) {
+			forget(chunks.putAndMoveToLast(chunkPos.toLong(), bucket));
+			remember(bucket);
+			while (chunks.size() > maxChunks) {
+				forget(chunks.removeFirst());
+				EVICTED.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Whether the chunk has a valid start of the structure - {@link StructureCheckResult#START_PRESENT} or
+	 * {@link StructureCheckResult#START_NOT_PRESENT} if the chunk is in the index, otherwise
+	 * {@link StructureCheckResult#CHUNK_LOAD_NEEDED}.
+	 */
+	public StructureCheckResult check(ChunkPos chunkPos, Structure structure) {
+		Structure[] bucket;
+		synchronized (this) {
+			bucket = chunks.get(chunkPos.toLong());
+		}
+		if (bucket == null) {
+			return StructureCheckResult.CHUNK_LOAD_NEEDED;
+		}
+		HITS.incrementAndGet();
+		for (Structure start : bucket) {
+			if (start == structure) {
+				return StructureCheckResult.START_PRESENT;
+			}
+		}
+		return StructureCheckResult.START_NOT_PRESENT;
+	}
+
+	private void remember(Structure[] bucket) {
+		if (bucket.length > 0) {
+			buckets++;
+			starts += bucket.length;
+		}
+	}
+
+	private void forget(@Nullable Structure[] bucket) {
+		if (bucket != null && bucket.length > 0) {
+			buckets--;
+			starts -= bucket.length;
+		}
+	}
+
+	public record Usage(long chunks, long starts, long bytes) {}
+}
@@ -0,0 +1,177 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.AsyncLocator.LocateTask;
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gathers structure locates made on the server thread during a tick, and at the end of the tick starts the ones from
+ * the same origin with the same settings as one {@link AsyncLocator#locateBatch} pass. This is for things that ask for
+ * several maps at once, like a loot roll with several exploration maps or a cartographer's new trades.
+ * <p>
+ * Each caller gets its task straight away. Its future is also its task future, so cancelling it before the end of the
+ * tick just takes it out of the batch, and cancelling it after only detaches the caller from the pass.
+ * <p>
+ * A request that's alone in its batch is started as a normal locate, so it can share a search through
+ * {@link LocateCoalescer}. Batched passes check and fill {@link LocateResultCache}, but don't coalesce with other
+ * searches.
+ */
+public class LocateBatcher {
+	// Guarded by itself
+	private static final Map<BatchKey, List<Request>> PENDING = new LinkedHashMap<>();
+
+	private LocateBatcher() {}
+
+	/**
+	 * Same as {@link AsyncLocator#locate(LocateFeature, String, ServerLevel, HolderSet, BlockPos, int, boolean)}, but
+	 * batched with other locates from the same origin this tick.
+	 */
+	public static LocateTask<Pair<BlockPos, Holder<Structure>>> locate(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {
+		// Nothing ends the tick for anything off the server thread
+		if (!level.getServer().isSameThread()) {
+			return AsyncLocator.locate(feature, source, level, structureSet, pos, searchRadius, skipKnownStructures);
+		}
+		Request request = new Request(structureSet, new CompletableFuture<>(), new LocateProgress());
+		synchronized (PENDING) {
+			PENDING.computeIfAbsent(
+				new BatchKey(feature, source, level, pos.immutable(), searchRadius, skipKnownStructures),
+				k -> new ArrayList<>()
+			).add(request);
+		}
+		return new LocateTask<>(level.getServer(), request.future(), request.future(), request.progress());
+	}
+
+	/**
+	 * Same as {@link AsyncLocator#locate(LocateFeature, String, ServerLevel, TagKey, BlockPos, int, boolean)}, but
+	 * batched with other locates from the same origin this tick.
+	 */
+	public static LocateTask<BlockPos> locate(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		TagKey<Structure> structureTag,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {
+		Optional<HolderSet.Named<Structure>> structureSet =
+			level.registryAccess().lookupOrThrow(Registries.STRUCTURE).get(structureTag);
+		// The unbatched path already answers these without searching
+		if (!level.getServer().getWorldData().worldGenOptions().generateStructures() || structureSet.isEmpty()) {
+			return AsyncLocator.locate(feature, source, level, structureTag, pos, searchRadius, skipKnownStructures);
+		}
+		LocateTask<Pair<BlockPos, Holder<Structure>>> task =
+			locate(feature, source, level, structureSet.get(), pos, searchRadius, skipKnownStructures);
+		return new LocateTask<>(
+			level.getServer(),
+			task.completableFuture().thenApply(pair -> pair == null ? null : pair.getFirst()),
+			task.taskFuture(),
+			task.progress()
+		);
+	}
+
+	/**
+	 * Starts everything gathered this tick. Called at the end of each server tick.
+	 */
+	public static void flush() {
+		List<Map.Entry<BatchKey, List<Request>>> batches;
+		synchronized (PENDING) {
+			if (PENDING.isEmpty()) {
+				return;
+			}
+			batches = new ArrayList<>(PENDING.entrySet());
+			PENDING.clear();
+		}
+		for (Map.Entry<BatchKey, List<Request>> batch : batches) {
+			start(batch.getKey(), batch.getValue());
+		}
+	}
+
+	/**
+	 * Drops anything that hasn't been started, as there's no server left to start it on.
+	 */
+	public static void clear() {
+		List<List<Request>> dropped;
+		synchronized (PENDING) {
+			dropped = new ArrayList<>(PENDING.values());
+			PENDING.clear();
+		}
+		dropped.forEach(requests -> requests.forEach(request -> request.future().cancel(false)));
+	}
+
+	private static void start(BatchKey key, List<Request> requests) {
+		requests.removeIf(request -> request.future().isDone());
+		if (requests.isEmpty()) {
+			return;
+		}
+		List<LocateTask<Pair<BlockPos, Holder<Structure>>>> tasks = requests.size() == 1
+			? List.of(AsyncLocator.locate(
+				key.feature(),
+				key.source(),
+				key.level(),
+				requests.get(0).structureSet(),
+				key.pos(),
+				key.searchRadius(),
+				key.skipKnownStructures()
+			))
+			: AsyncLocator.locateBatch(
+				key.feature(),
+				key.source(),
+				key.level(),
+				requests.stream().map(Request::structureSet).toList(),
+				key.pos(),
+				key.searchRadius(),
+				key.skipKnownStructures()
+			);
+		for (int i = 0; i < requests.size(); i++) {
+			Request request = requests.get(i);
+			LocateTask<Pair<BlockPos, Holder<Structure>>> task = tasks.get(i);
+			task.progress().listen(request.progress()::report);
+			task.completableFuture().whenComplete((result, throwable) -> {
+				if (throwable != null) request.future().completeExceptionally(throwable);
+				else request.future().complete(result);
+			});
+			request.future().whenComplete((ignored, ignoredThrowable) -> {
+				if (request.future().isCancelled()) task.cancel();
+			});
+		}
+	}
+
+	private record BatchKey(
+		LocateFeature feature,
+		@Nullable String source,
+		ServerLevel level,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {}
+
+	private record Request(
+		HolderSet<Structure> structureSet,
+		CompletableFuture<Pair<BlockPos, Holder<Structure>>> future,
+		LocateProgress progress
+	) {}
+}
@@ -0,0 +1,211 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.AsyncLocator.LocateTask;
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight layer for structure searches.
+ * <p>
+ * Requests with the same {@link LocateResultCache.Query} key in the same level share one search while it's running.
+ * Every caller gets its own future, so cancelling one of them only cancels the shared search once no other callers are
+ * left waiting on it. Callers with a different origin or radius than the search that's running get their answer
+ * through {@link LocateResultCache} once it's done, or run their own search if it can't be proven to be the same.
+ * <p>
+ * Only the map of running searches is touched while holding its lock. Searches are submitted after it's released, as
+ * submitting can take the executor's lock, which is held while this is cleared.
+ */
+public class LocateCoalescer {
+	private static final Map<FlightKey, Flight> IN_FLIGHT = new HashMap<>();
+	private static final AtomicLong COALESCED = new AtomicLong();
+
+	private LocateCoalescer() {}
+
+	/**
+	 * Attaches to the running search for the query, or starts one with the given search if there isn't one.
+	 *
+	 * @param search Submits an uncoalesced search for this caller's origin and radius
+	 */
+	public static LocateTask<Pair<BlockPos, Holder<Structure>>> join(
+		LocateFeature feature,
+		ServerLevel level,
+		LocateResultCache.Query query,
+		BlockPos pos,
+		int searchRadius,
+		Supplier<LocateTask<Pair<BlockPos, Holder<Structure>>>> search
+	) {
+		FlightKey key = new FlightKey(level, query.key());
+		Flight flight;
+		boolean starting = false;
+		synchronized (IN_FLIGHT) {
+			flight = IN_FLIGHT.get(key);
+			if (flight == null) {
+				flight = new Flight(pos, searchRadius);
+				IN_FLIGHT.put(key, flight);
+				starting = true;
+			} else {
+				COALESCED.incrementAndGet();
+				ALConstants.logDebug("Attaching to in-flight locate task for {} around {}", query.key().target(), pos);
+			}
+			flight.waiters++;
+		}
+		if (starting) {
+			start(key, flight, search);
+		} else {
+			// Don't leave a higher priority caller waiting behind a lower priority shared search
+			LocateTask<Pair<BlockPos, Holder<Structure>>> task = flight.task;
+			if (task != null) {
+				AsyncLocator.raisePriority(task, feature);
+			}
+		}
+		return attach(level, key, flight, query, pos, searchRadius, search);
+	}
+
+	/**
+	 * The number of requests that attached to an already running search instead of starting their own.
+	 */
+	public static long coalesced() {
+		return COALESCED.get();
+	}
+
+	public static void clear() {
+		synchronized (IN_FLIGHT) {
+			IN_FLIGHT.clear();
+		}
+	}
+
+	private static void start(
+		FlightKey key,
+		Flight flight,
+		Supplier<LocateTask<Pair<BlockPos, Holder<Structure>>>> search
+	) {
+		// However the shared search ends, later callers should start a new one
+		flight.future.whenComplete((result, throwable) -> {
+			synchronized (IN_FLIGHT) {
+				IN_FLIGHT.remove(key, flight);
+			}
+		});
+		LocateTask<Pair<BlockPos, Holder<Structure>>> task;
+		try {
+			task = search.get();
+		} catch (RuntimeException e) {
+			flight.future.completeExceptionally(e);
+			return;
+		}
+		flight.task = task;
+		// Every waiter may have been cancelled before the search was submitted
+		if (flight.future.isCancelled()) {
+			task.cancel();
+			return;
+		}
+		task.progress().listen(flight.progress::report);
+		task.completableFuture().whenComplete((result, throwable) -> {
+			if (throwable != null) flight.future.completeExceptionally(throwable);
+			else flight.future.complete(result);
+		});
+	}
+
+	private static LocateTask<Pair<BlockPos, Holder<Structure>>> attach(
+		ServerLevel level,
+		FlightKey key,
+		Flight flight,
+		LocateResultCache.Query query,
+		BlockPos pos,
+		int searchRadius,
+		Supplier<LocateTask<Pair<BlockPos, Holder<Structure>>>> search
+	) {
+		CompletableFuture<Pair<BlockPos, Holder<Structure>>> waiter = new CompletableFuture<>();
+		// Bands the shared search has covered are only this caller's progress if it's searching the same area
+		LocateProgress progress = new LocateProgress();
+		if (flight.origin.equals(pos) && flight.searchRadius == searchRadius) {
+			flight.progress.listen(progress::report);
+		}
+		waiter.whenComplete((result, throwable) -> {
+			// Cancelled or timed out by the caller, so it no longer needs the shared search
+			if (throwable != null) {
+				release(key, flight);
+			}
+		});
+
+		flight.future.whenComplete((result, throwable) -> {
+			if (waiter.isDone()) {
+				return;
+			}
+			if (throwable != null) {
+				waiter.completeExceptionally(throwable);
+			} else if (flight.origin.equals(pos) && flight.searchRadius == searchRadius) {
+				waiter.complete(result);
+			} else {
+				// The shared result has been cached by now, so that decides whether it's also this caller's answer
+				LocateResultCache.Hit hit = LocateResultCache.get(level, query, pos, searchRadius);
+				if (hit != null) {
+					waiter.complete(hit.result());
+				} else {
+					ALConstants.logDebug("Shared locate result doesn't apply to {} - running own search", pos);
+					LocateTask<Pair<BlockPos, Holder<Structure>>> ownTask = search.get();
+					ownTask.progress().listen(progress::report);
+					ownTask.completableFuture().whenComplete((ownResult, ownThrowable) -> {
+						if (ownThrowable != null) waiter.completeExceptionally(ownThrowable);
+						else waiter.complete(ownResult);
+					});
+					waiter.whenComplete((ignored, ignoredThrowable) -> {
+						if (waiter.isCancelled()) ownTask.cancel();
+					});
+				}
+			}
+		});
+
+		// The waiter is also the task future, so cancelling the task only detaches this caller
+		return new LocateTask<>(level.getServer(), waiter, waiter, progress);
+	}
+
+	private static void release(FlightKey key, Flight flight) {
+		boolean cancelShared;
+		synchronized (IN_FLIGHT) {
+			cancelShared = --flight.waiters <= 0 && !flight.future.isDone();
+			if (cancelShared) {
+				IN_FLIGHT.remove(key, flight);
+			}
+		}
+		if (cancelShared) {
+			ALConstants.logDebug("All waiters cancelled - cancelling shared locate task");
+			flight.future.cancel(false);
+			// Otherwise it's cancelled once it has been submitted
+			LocateTask<Pair<BlockPos, Holder<Structure>>> task = flight.task;
+			if (task != null) {
+				task.cancel();
+			}
+		}
+	}
+
+	private record FlightKey(ServerLevel level, LocateResultCache.Key key) {}
+
+	private static final class Flight {
+		// Completed with the shared search's result, which waiters attach to before the search has been submitted
+		private final CompletableFuture<Pair<BlockPos, Holder<Structure>>> future = new CompletableFuture<>();
+		private final LocateProgress progress = new LocateProgress();
+		private final BlockPos origin;
+		private final int searchRadius;
+		// Null until the search has been submitted
+		private volatile @Nullable LocateTask<Pair<BlockPos, Holder<Structure>>> task = null;
+		// Guarded by IN_FLIGHT
+		private int waiters = 0;
+
+		private Flight(BlockPos origin, int searchRadius) {
+			this.origin = origin;
+			this.searchRadius = searchRadius;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package brightspark.asynclocator.locate;
+
+/**
+ * The entry points that queue locate tasks. Each one has its own configurable priority in the locating executor.
+ */
+public enum LocateFeature {
+	LOCATE_COMMAND("command"),
+	LOCATE_BIOME_COMMAND("biome"),
+	EYE_OF_ENDER("eye"),
+	VILLAGER_TRADE("merchant"),
+	EXPLORATION_MAP("exploration_map"),
+	DOLPHIN_TREASURE("dolphin"),
+	// Tasks queued by other mods through the API without a feature
+	OTHER("other");
+
+	private final String id;
+
+	LocateFeature(String id) {
+		this.id = id;
+	}
+
+	public String id() {
+		return id;
+	}
+
+	/**
+	 * Whether this is one of the locate commands, which fail fast rather than waiting when they can't run.
+	 */
+	public boolean isCommand() {
+		return this == LOCATE_COMMAND || this == LOCATE_BIOME_COMMAND;
+	}
+}
@@ -0,0 +1,120 @@
+package brightspark.asynclocator.locate;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome metrics for each {@link LocateFeature}, shown by the /asynclocator stats command.
+ * <p>
+ * Requests are counted when they're made, and timed from then until their result can be handed over on the server
+ * thread. Searches are timed from being queued to starting, and from starting to finishing, with their outcome counted
+ * when they finish. Requests answered from the cache or by joining another search don't run a search of their own.
+ */
+public class LocateMetrics {
+	private static volatile Snapshot current = new Snapshot();
+
+	private LocateMetrics() {}
+
+	public static void recordRequest(LocateFeature feature) {
+		current.features.get(feature).requests.increment();
+	}
+
+	public static void recordEndToEnd(LocateFeature feature, long nanos) {
+		current.features.get(feature).endToEnd.record(nanos);
+	}
+
+	public static void recordQueueWait(LocateFeature feature, long nanos) {
+		current.features.get(feature).queueWait.record(nanos);
+	}
+
+	public static void recordExecution(LocateFeature feature, long nanos) {
+		current.features.get(feature).execution.record(nanos);
+	}
+
+	public static void recordOutcome(LocateFeature feature, Outcome outcome) {
+		FeatureMetrics metrics = current.features.get(feature);
+		switch (outcome) {
+			case FOUND -> metrics.found.increment();
+			case MISSED -> metrics.missed.increment();
+			case TIMED_OUT -> metrics.timedOut.increment();
+		}
+	}
+
+	public static FeatureMetrics get(LocateFeature feature) {
+		return current.features.get(feature);
+	}
+
+	/**
+	 * When the metrics started being recorded, from {@link System#nanoTime()}.
+	 */
+	public static long sinceNanos() {
+		return current.sinceNanos;
+	}
+
+	/**
+	 * Starts recording from scratch. Anything recorded concurrently may go to the old metrics.
+	 */
+	public static void reset() {
+		current = new Snapshot();
+	}
+
+	public enum Outcome {
+		FOUND,
+		MISSED,
+		TIMED_OUT
+	}
+
+	public static class FeatureMetrics {
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder found = new LongAdder();
+		private final LongAdder missed = new LongAdder();
+		private final LongAdder timedOut = new LongAdder();
+		private final LatencyHistogram queueWait = new LatencyHistogram();
+		private final LatencyHistogram execution = new LatencyHistogram();
+		private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+		public long requests() {
+			return requests.sum();
+		}
+
+		public long found() {
+			return found.sum();
+		}
+
+		public long missed() {
+			return missed.sum();
+		}
+
+		public long timedOut() {
+			return timedOut.sum();
+		}
+
+		public long searches() {
+			return found() + missed() + timedOut();
+		}
+
+		public LatencyHistogram queueWait() {
+			return queueWait;
+		}
+
+		public LatencyHistogram execution() {
+			return execution;
+		}
+
+		public LatencyHistogram endToEnd() {
+			return endToEnd;
+		}
+	}
+
+	private static class Snapshot {
+		private final long sinceNanos = System.nanoTime();
+		private final Map<LocateFeature, FeatureMetrics> features = new EnumMap<>(LocateFeature.class);
+
+		private Snapshot() {
+			for (LocateFeature feature : LocateFeature.values()) {
+				features.put(feature, new FeatureMetrics());
+			}
+		}
+	}
+}
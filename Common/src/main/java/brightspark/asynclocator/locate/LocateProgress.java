@@ -0,0 +1,67 @@
+package brightspark.asynclocator.locate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Progress of a running search, reported each time it finishes another radius band (16, 32 and 64 rings or steps out)
+ * without finding anything.
+ * <p>
+ * A search stops at the first ring it finds something in, and that's also the result of searching the full radius, so
+ * bands only ever report that there's nothing closer. Listeners added after a band has been reported get the latest
+ * band straight away.
+ */
+public final class LocateProgress {
+	private static final int[] BANDS = {16, 32, 64};
+
+	private final List<Consumer<Stage>> listeners = new ArrayList<>();
+	private Stage latest = null;
+
+	/**
+	 * Whether the radius is the edge of a band that should be reported when searching up to the max radius. The max
+	 * radius itself isn't a band, since reaching it completes the search.
+	 */
+	public static boolean isBand(int radius, int maxRadius) {
+		if (radius >= maxRadius) {
+			return false;
+		}
+		for (int band : BANDS) {
+			if (band == radius) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void listen(Consumer<Stage> listener) {
+		Stage stage;
+		synchronized (this) {
+			listeners.add(listener);
+			stage = latest;
+		}
+		if (stage != null) {
+			listener.accept(stage);
+		}
+	}
+
+	public void report(Stage stage) {
+		List<Consumer<Stage>> toNotify;
+		synchronized (this) {
+			if (latest != null && latest.radius() >= stage.radius()) {
+				return;
+			}
+			latest = stage;
+			toNotify = List.copyOf(listeners);
+		}
+		toNotify.forEach(listener -> listener.accept(stage));
+	}
+
+	/**
+	 * A finished band.
+	 *
+	 * @param radius The radius searched so far without finding anything - rings for structures, blocks for biomes
+	 * @param maxRadius The radius the search will go up to
+	 */
+	public record Stage(int radius, int maxRadius) {}
+}
@@ -0,0 +1,30 @@
+package brightspark.asynclocator.locate;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A locate request that was refused because its source is over the quota for the feature.
+ */
+public class LocateQuotaExceededException extends RejectedExecutionException {
+	private final long retryAfterNanos;
+
+	public LocateQuotaExceededException(LocateFeature feature, String source, long retryAfterNanos) {
+		super("Over the " + feature.id() + " locate quota for " + source);
+		this.retryAfterNanos = retryAfterNanos;
+	}
+
+	/**
+	 * How long until the source can make this request again.
+	 */
+	public long retryAfterNanos() {
+		return retryAfterNanos;
+	}
+
+	/**
+	 * How many seconds until the source can make this request again, rounded up.
+	 */
+	public long retryAfterSeconds() {
+		return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+	}
+}
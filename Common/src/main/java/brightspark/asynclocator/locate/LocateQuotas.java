@@ -0,0 +1,138 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.platform.Services;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.player.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket quotas for locate requests, per feature and per source.
+ * <p>
+ * Each source gets a bucket per feature holding up to {@link brightspark.asynclocator.platform.services.ConfigHelper#locateQuota}
+ * tokens, which refills at that many tokens per minute. A request without a token is either refused straight away, or
+ * deferred until its token has refilled. Deferred requests borrow against the bucket, at most a full bucket's worth, so
+ * a source can't have more than a minute of requests waiting on it.
+ */
+public class LocateQuotas {
+	private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+	// Full buckets are forgotten once there's this many, since they're the same as a new one
+	private static final int CLEANUP_THRESHOLD = 1_024;
+
+	private static final Map<BucketKey, Bucket> BUCKETS = new ConcurrentHashMap<>();
+
+	private LocateQuotas() {}
+
+	/**
+	 * The quota source for a command - the player or entity running it, or the command source's name otherwise (e.g.
+	 * command blocks).
+	 */
+	public static String sourceOf(CommandSourceStack sourceStack) {
+		Entity entity = sourceStack.getEntity();
+		return entity != null ? sourceOf(entity) : "command:" + sourceStack.getTextName();
+	}
+
+	/**
+	 * The quota source for an entity - each entity gets its own quota, so one busy villager or dolphin can't use up
+	 * the quota for every other one of its type.
+	 */
+	public static String sourceOf(Entity entity) {
+		return (entity instanceof Player ? "player:" : "entity:") + entity.getUUID();
+	}
+
+	/**
+	 * Takes a token from the source's bucket for the feature.
+	 *
+	 * @param source The quota source, or null if the request isn't metered
+	 * @param canDefer Whether the request can wait for a token instead of being refused
+	 */
+	public static Permit acquire(LocateFeature feature, @Nullable String source, boolean canDefer) {
+		int quota = Services.CONFIG.locateQuota(feature);
+		if (source == null || quota <= 0) {
+			return Permit.NOW;
+		}
+		if (BUCKETS.size() > CLEANUP_THRESHOLD) {
+			cleanup();
+		}
+		Permit permit = BUCKETS.computeIfAbsent(new BucketKey(feature, source), k -> new Bucket(quota))
+			.acquire(quota, System.nanoTime(), canDefer);
+		if (permit.refused()) {
+			ALConstants.logDebug("Refused {} locate for {} - over quota", feature.id(), source);
+		} else if (permit.delayNanos() > 0) {
+			ALConstants.logDebug(
+				"Deferring {} locate for {} by {}ms - over quota",
+				feature.id(), source, TimeUnit.NANOSECONDS.toMillis(permit.delayNanos())
+			);
+		}
+		return permit;
+	}
+
+	public static void clear() {
+		BUCKETS.clear();
+	}
+
+	private static void cleanup() {
+		long now = System.nanoTime();
+		BUCKETS.entrySet().removeIf(entry -> entry.getValue().isFull(Services.CONFIG.locateQuota(entry.getKey().feature()), now));
+	}
+
+	private record BucketKey(LocateFeature feature, String source) {}
+
+	private static final class Bucket {
+		private double tokens;
+		private long lastRefillNanos = System.nanoTime();
+
+		private Bucket(int capacity) {
+			tokens = capacity;
+		}
+
+		private synchronized Permit acquire(int capacity, long now, boolean canDefer) {
+			refill(capacity, now);
+			double nanosPerToken = (double) NANOS_PER_MINUTE / capacity;
+			if (tokens >= 1) {
+				tokens--;
+				return Permit.NOW;
+			}
+			if (!canDefer || tokens - 1 < -capacity) {
+				return Permit.refused((long) ((1 - tokens) * nanosPerToken));
+			}
+			tokens--;
+			// The request runs once the bucket would have refilled back to empty
+			return Permit.deferred((long) (-tokens * nanosPerToken));
+		}
+
+		private synchronized boolean isFull(int capacity, long now) {
+			refill(capacity, now);
+			return tokens >= capacity;
+		}
+
+		private void refill(int capacity, long now) {
+			tokens = Math.min(capacity, tokens + (double) (now - lastRefillNanos) * capacity / NANOS_PER_MINUTE);
+			lastRefillNanos = now;
+		}
+	}
+
+	/**
+	 * The outcome of trying to take a token.
+	 *
+	 * @param refused Whether the request was refused
+	 * @param delayNanos How long the request has to wait before it can run, or how long until it'd be accepted if it was
+	 *                   refused
+	 */
+	public record Permit(boolean refused, long delayNanos) {
+		private static final Permit NOW = new Permit(false, 0);
+
+		private static Permit deferred(long delayNanos) {
+			return new Permit(false, delayNanos);
+		}
+
+		private static Permit refused(long retryAfterNanos) {
+			return new Permit(true, retryAfterNanos);
+		}
+	}
+}
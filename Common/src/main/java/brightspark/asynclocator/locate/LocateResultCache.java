@@ -0,0 +1,240 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.mixins.ChunkGeneratorStructureStateAccess;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.StructurePlacement;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-level cache of structure locate results.
+ * <p>
+ * An entry is only ever served when it's provably the same answer
+ * {@link net.minecraft.world.level.chunk.ChunkGenerator#findNearestMapStructure} would give for the new origin:
+ * <ul>
+ *     <li>A single random spread placement walks the same placement cells in the same order for every origin chunk
+ *     inside the same placement cell, so entries are keyed by that cell and the ring the result was found in.</li>
+ *     <li>A single concentric rings placement has a fixed list of candidates. A result can be reused if every
+ *     candidate at least as close to the new origin was already rejected by the original search.</li>
+ *     <li>Anything else has distance tie-breaks between placements, so only the exact same origin is reused.</li>
+ * </ul>
+ * Found structures are never cached when skipping known structures, as vanilla references them once returned. A miss
+ * stays a miss though, since references are never removed.
+ * <p>
+ * Entries for a tag are only right for the members it had when they were found, so the cache is cleared whenever
+ * datapacks are reloaded.
+ */
+public class LocateResultCache {
+	private static final int MAX_ENTRIES_PER_LEVEL = 1_024;
+	private static final Duration ENTRY_TTL = Duration.ofMinutes(10);
+	// Concentric rings results are keyed by a coarse region of 64x64 chunks
+	private static final int RINGS_REGION_SHIFT = 6;
+
+	private static final Map<ServerLevel, Cache<Key, Entry>> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+
+	private LocateResultCache() {}
+
+	/**
+	 * Works out the cache query for the given search, or null if the search can't be cached.
+	 */
+	public static @Nullable Query query(
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures
+	) {
+		Object target = structureSet.unwrap().map(tag -> tag, List::copyOf);
+		ChunkGeneratorStructureState state = level.getChunkSource().getGeneratorState();
+		Set<StructurePlacement> placements = new HashSet<>();
+		for (Holder<Structure> holder : structureSet) {
+			placements.addAll(state.getPlacementsForStructure(holder));
+		}
+		if (placements.isEmpty()) {
+			// Vanilla returns straight away, nothing to gain here
+			return null;
+		}
+
+		StructurePlacement placement = placements.size() == 1 ? placements.iterator().next() : null;
+		int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+		int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+		Key key;
+		if (placement instanceof RandomSpreadStructurePlacement randomSpread) {
+			int spacing = randomSpread.spacing();
+			long region = ChunkPos.asLong(Math.floorDiv(chunkX, spacing), Math.floorDiv(chunkZ, spacing));
+			key = new Key(target, skipKnownStructures, Scheme.CELL, region, 0);
+		} else if (placement instanceof ConcentricRingsStructurePlacement) {
+			long region = ChunkPos.asLong(chunkX >> RINGS_REGION_SHIFT, chunkZ >> RINGS_REGION_SHIFT);
+			key = new Key(target, skipKnownStructures, Scheme.RINGS, region, 0);
+		} else {
+			key = new Key(target, skipKnownStructures, Scheme.EXACT, pos.asLong(), searchRadius);
+		}
+		return new Query(key, placement);
+	}
+
+	/**
+	 * Gets the cached result for the query if it's provably still the answer for the given origin.
+	 */
+	public static @Nullable Hit get(ServerLevel level, Query query, BlockPos pos, int searchRadius) {
+		Cache<Key, Entry> cache = CACHES.get(level);
+		Entry entry = cache == null ? null : cache.getIfPresent(query.key());
+		Hit hit = entry == null ? null : resolve(level, query, entry, pos, searchRadius);
+		if (hit != null) {
+			HITS.incrementAndGet();
+			ALConstants.logDebug("Locate cache hit for {} around {}", query.key().target(), pos);
+		} else {
+			MISSES.incrementAndGet();
+		}
+		return hit;
+	}
+
+	/**
+	 * Stores the result of a finished search.
+	 */
+	public static void put(
+		ServerLevel level,
+		Query query,
+		BlockPos pos,
+		int searchRadius,
+		@Nullable Pair<BlockPos, Holder<Structure>> result
+	) {
+		if (result != null && query.key().skipKnownStructures()) {
+			return;
+		}
+		int ring = -1;
+		if (result != null && query.key().scheme() == Scheme.CELL) {
+			ring = ringOf((RandomSpreadStructurePlacement) query.placement(), pos, result.getFirst());
+		}
+		CACHES.computeIfAbsent(level, l -> CacheBuilder.newBuilder()
+				.maximumSize(MAX_ENTRIES_PER_LEVEL)
+				.expireAfterWrite(ENTRY_TTL)
+				.build())
+			.put(query.key(), new Entry(pos, result, ring, searchRadius));
+	}
+
+	public static void clear() {
+		CACHES.clear();
+	}
+
+	public static long hits() {
+		return HITS.get();
+	}
+
+	public static long misses() {
+		return MISSES.get();
+	}
+
+	private static @Nullable Hit resolve(ServerLevel level, Query query, Entry entry, BlockPos pos, int searchRadius) {
+		return switch (query.key().scheme()) {
+			case CELL -> {
+				if (entry.result() != null) {
+					// Rings before the one it was found in were empty, so a smaller radius provably finds nothing
+					yield new Hit(entry.ring() <= searchRadius ? entry.result() : null);
+				}
+				yield searchRadius <= entry.searchRadius() ? new Hit(null) : null;
+			}
+			case RINGS -> {
+				if (entry.result() == null) {
+					yield new Hit(null);
+				}
+				yield isStillNearest(level, (ConcentricRingsStructurePlacement) query.placement(), entry, pos)
+					? new Hit(entry.result())
+					: null;
+			}
+			case EXACT -> new Hit(entry.result());
+		};
+	}
+
+	/*
+	 * Every ring candidate closer to the original origin than the result was checked and rejected, so the result is
+	 * still the nearest one if every candidate at least as close to the new origin falls within that rejected set.
+	 * This is checked on the server thread, so it gives up rather than wait for the ring positions to be worked out.
+	 */
+	private static boolean isStillNearest(
+		ServerLevel level,
+		ConcentricRingsStructurePlacement placement,
+		Entry entry,
+		BlockPos pos
+	) {
+		CompletableFuture<List<ChunkPos>> future = ((ChunkGeneratorStructureStateAccess) level.getChunkSource()
+			.getGeneratorState()).asynclocator$getRingPositions().get(placement);
+		List<ChunkPos> ringPositions = future != null && future.isDone() && !future.isCompletedExceptionally()
+			? future.join()
+			: null;
+		if (ringPositions == null) {
+			return false;
+		}
+		ChunkPos resultChunk = chunkOf(placement, entry.result().getFirst());
+		BlockPos.MutableBlockPos candidatePos = new BlockPos.MutableBlockPos();
+		candidatePos.set(SectionPos.sectionToBlockCoord(resultChunk.x, 8), 32, SectionPos.sectionToBlockCoord(resultChunk.z, 8));
+		double resultDistNew = candidatePos.distSqr(pos);
+		double resultDistOld = candidatePos.distSqr(entry.origin());
+		for (ChunkPos chunkPos : ringPositions) {
+			if (chunkPos.equals(resultChunk)) {
+				continue;
+			}
+			candidatePos.set(SectionPos.sectionToBlockCoord(chunkPos.x, 8), 32, SectionPos.sectionToBlockCoord(chunkPos.z, 8));
+			if (candidatePos.distSqr(pos) <= resultDistNew && candidatePos.distSqr(entry.origin()) >= resultDistOld) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int ringOf(RandomSpreadStructurePlacement placement, BlockPos origin, BlockPos found) {
+		ChunkPos foundChunk = chunkOf(placement, found);
+		int spacing = placement.spacing();
+		int foundCellX = Math.floorDiv(foundChunk.x, spacing);
+		int foundCellZ = Math.floorDiv(foundChunk.z, spacing);
+		int originCellX = Math.floorDiv(SectionPos.blockToSectionCoord(origin.getX()), spacing);
+		int originCellZ = Math.floorDiv(SectionPos.blockToSectionCoord(origin.getZ()), spacing);
+		return Math.max(Math.abs(foundCellX - originCellX), Math.abs(foundCellZ - originCellZ));
+	}
+
+	// The locate pos is the min block of the start chunk plus the placement's locate offset
+	private static ChunkPos chunkOf(StructurePlacement placement, BlockPos locatePos) {
+		BlockPos offset = placement.getLocatePos(new ChunkPos(0, 0));
+		return new ChunkPos(
+			SectionPos.blockToSectionCoord(locatePos.getX() - offset.getX()),
+			SectionPos.blockToSectionCoord(locatePos.getZ() - offset.getZ())
+		);
+	}
+
+	enum Scheme {
+		CELL,
+		RINGS,
+		EXACT
+	}
+
+	record Key(Object target, boolean skipKnownStructures, Scheme scheme, long region, int searchRadius) {}
+
+	private record Entry(BlockPos origin, @Nullable Pair<BlockPos, Holder<Structure>> result, int ring, int searchRadius) {}
+
+	public record Query(Key key, @Nullable StructurePlacement placement) {}
+
+	public record Hit(@Nullable Pair<BlockPos, Holder<Structure>> result) {}
+}
@@ -0,0 +1,275 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.platform.Services;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool that runs queued locate tasks by priority instead of FIFO.
+ * <p>
+ * When given CPU permits (see {@link CpuPermits}), each task waits for a permit before it runs. This is used when the
+ * pool is made of virtual threads, so the pool can be larger than the number of tasks that should use the CPU at once.
+ * <p>
+ * The queue is bounded by {@link brightspark.asynclocator.platform.services.ConfigHelper#maxQueuedTasks()}. Once it's
+ * full, new tasks are admitted according to the configured {@link OverloadPolicy}, and any task that doesn't make it
+ * into the queue has its rejection callback run instead.
+ * <p>
+ * Tasks are ordered by a virtual enqueue time, which is the time they were queued minus {@link #AGING_STEP_NANOS} for
+ * each point of priority. Higher priority tasks therefore jump ahead of lower ones, but a lower priority task that has
+ * waited longer than the difference in priority is worth will still run before newer higher priority tasks, so it can't
+ * be starved.
+ * <p>
+ * The pool can be resized while it runs with {@link #resize}, which keeps queued and running tasks.
+ */
+public class LocatingExecutor extends ThreadPoolExecutor {
+	// How long a task has to wait to be worth one point of priority
+	private static final long AGING_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private final @Nullable ResizableSemaphore cpuPermits;
+	// Guarded by this
+	private int cpuThreads;
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	// Guarded by this
+	private boolean overloaded = false;
+
+	public LocatingExecutor(int threads, ThreadFactory threadFactory) {
+		super(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+		this.cpuPermits = null;
+		this.cpuThreads = threads;
+	}
+
+	/**
+	 * Makes a pool whose tasks each wait for one of the given number of CPU permits before they run.
+	 */
+	public LocatingExecutor(int threads, ThreadFactory threadFactory, int cpuThreads) {
+		super(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+		this.cpuPermits = new ResizableSemaphore(cpuThreads);
+		this.cpuThreads = cpuThreads;
+	}
+
+	/**
+	 * What the pool's tasks run on - {@link ExecutorMode#VIRTUAL} if they wait for CPU permits.
+	 */
+	public ExecutorMode mode() {
+		return cpuPermits != null ? ExecutorMode.VIRTUAL : ExecutorMode.FIXED;
+	}
+
+	/**
+	 * Changes the number of threads in the pool, and how many tasks can be using the CPU at once if it has CPU permits.
+	 * <p>
+	 * Queued and running tasks are kept. When growing, new threads are started for anything queued. When shrinking,
+	 * threads over the new size exit once they've finished their current task, and tasks holding CPU permits keep them
+	 * until they're done.
+	 */
+	public synchronized void resize(int threads, int cpuThreads) {
+		// The core size can never be above the max, so which goes first depends on the direction
+		if (threads > getMaximumPoolSize()) {
+			setMaximumPoolSize(threads);
+			setCorePoolSize(threads);
+		} else if (threads < getMaximumPoolSize()) {
+			setCorePoolSize(threads);
+			setMaximumPoolSize(threads);
+		}
+		if (cpuPermits != null && cpuThreads != this.cpuThreads) {
+			if (cpuThreads > this.cpuThreads) {
+				cpuPermits.release(cpuThreads - this.cpuThreads);
+			} else {
+				cpuPermits.reducePermits(this.cpuThreads - cpuThreads);
+			}
+			this.cpuThreads = cpuThreads;
+		}
+	}
+
+	/**
+	 * How many tasks can be using the CPU at once.
+	 */
+	public synchronized int cpuThreads() {
+		return cpuThreads;
+	}
+
+	/**
+	 * Queues the task with the configured priority of the feature.
+	 *
+	 * @param onRejected Run instead of the task if it's turned away or dropped because the queue is full
+	 */
+	public Future<?> submit(LocateFeature feature, Runnable task, Runnable onRejected) {
+		PrioritizedTask<?> future = new PrioritizedTask<>(task, null, feature, Services.CONFIG.locatePriority(feature));
+		future.onRejected = onRejected;
+		PrioritizedTask<?> dropped;
+		synchronized (this) {
+			dropped = admit(future);
+			if (dropped != future) {
+				execute(future);
+			}
+		}
+		if (dropped != null) {
+			reject(dropped);
+		}
+		return future;
+	}
+
+	/**
+	 * The number of tasks currently waiting in the queue.
+	 */
+	public int queueDepth() {
+		return getQueue().size();
+	}
+
+	/**
+	 * The number of tasks that were turned away or dropped because the queue was full.
+	 */
+	public long rejectedCount() {
+		return rejected.get();
+	}
+
+	/*
+	 * Works out which task doesn't make it when the queue is full - either the new task or the one it displaces.
+	 * Workers only ever take from the queue, so holding the lock is enough to keep it from growing past the limit.
+	 */
+	private @Nullable PrioritizedTask<?> admit(PrioritizedTask<?> task) {
+		int maxQueued = Services.CONFIG.maxQueuedTasks();
+		if (getQueue().size() < maxQueued) {
+			if (overloaded && getQueue().size() < maxQueued / 2) {
+				overloaded = false;
+				ALConstants.logInfo("Locating queue has recovered ({} queued)", getQueue().size());
+			}
+			return null;
+		}
+		if (!overloaded) {
+			overloaded = true;
+			ALConstants.logWarn(
+				"Locating queue is full ({} tasks) - applying overload policy {}",
+				maxQueued, Services.CONFIG.overloadPolicy()
+			);
+		}
+		if (Services.CONFIG.overloadPolicy() == OverloadPolicy.DROP_LOWEST_PRIORITY) {
+			PrioritizedTask<?> victim = lowestPriorityQueued();
+			if (victim != null && victim.priority < task.priority && getQueue().remove(victim)) {
+				return victim;
+			}
+		}
+		return task;
+	}
+
+	// The lowest priority task in the queue, and the oldest of those if there's several
+	private @Nullable PrioritizedTask<?> lowestPriorityQueued() {
+		PrioritizedTask<?> lowest = null;
+		for (Runnable runnable : getQueue()) {
+			if (runnable instanceof PrioritizedTask<?> queued
+				&& (lowest == null || queued.priority < lowest.priority
+				|| (queued.priority == lowest.priority && queued.seq < lowest.seq))) {
+				lowest = queued;
+			}
+		}
+		return lowest;
+	}
+
+	private void reject(PrioritizedTask<?> task) {
+		rejected.incrementAndGet();
+		ALConstants.logDebug("Rejected queued {} task as the locating queue is full", task.feature);
+		task.cancel(false);
+		if (task.onRejected != null) {
+			task.onRejected.run();
+		}
+	}
+
+	/**
+	 * Raises the priority of a task that's still queued to that of the given feature, if it's higher. Used when a
+	 * higher priority request ends up waiting on an existing task.
+	 */
+	public void raisePriority(Future<?> future, LocateFeature feature) {
+		if (!(future instanceof PrioritizedTask<?> task)) {
+			return;
+		}
+		int priority = Services.CONFIG.locatePriority(feature);
+		if (priority > task.priority && getQueue().remove(task)) {
+			ALConstants.logDebug("Raising priority of queued {} task to that of {}", task.feature, feature);
+			task.priority = priority;
+			getQueue().offer(task);
+		}
+	}
+
+	/**
+	 * The number of threads currently running tasks.
+	 */
+	public int activeThreads() {
+		return getActiveCount();
+	}
+
+	// Waiting for a CPU permit counts as time spent queued
+	@Override
+	protected void beforeExecute(Thread thread, Runnable runnable) {
+		if (cpuPermits != null) {
+			CpuPermits.acquire(cpuPermits);
+		}
+		// Tasks cancelled while queued don't do anything when run
+		if (runnable instanceof PrioritizedTask<?> task && !task.isDone()) {
+			task.startNanos = System.nanoTime();
+			LocateMetrics.recordQueueWait(task.feature, task.startNanos - task.enqueueNanos);
+		}
+	}
+
+	@Override
+	protected void afterExecute(Runnable runnable, Throwable throwable) {
+		CpuPermits.release();
+		if (runnable instanceof PrioritizedTask<?> task && task.startNanos != 0) {
+			LocateMetrics.recordExecution(task.feature, System.nanoTime() - task.startNanos);
+		}
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		// Anything submitted without a feature still needs to be comparable in the queue
+		return new PrioritizedTask<>(runnable, value, LocateFeature.OTHER, Services.CONFIG.locatePriority(LocateFeature.OTHER));
+	}
+
+	// Permits can be taken away while they're held, in which case the count goes below zero until enough are given back
+	private static final class ResizableSemaphore extends Semaphore {
+		private ResizableSemaphore(int permits) {
+			super(permits, true);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+	private final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+		private final LocateFeature feature;
+		private final long enqueueNanos = System.nanoTime();
+		private final long seq = sequence.getAndIncrement();
+		private @Nullable Runnable onRejected;
+		// Only accessed by the thread running the task
+		private long startNanos = 0;
+		// Only changed while the task is out of the queue
+		private int priority;
+
+		private PrioritizedTask(Runnable runnable, T value, LocateFeature feature, int priority) {
+			super(runnable, value);
+			this.feature = feature;
+			this.priority = priority;
+		}
+
+		private long virtualTime() {
+			return enqueueNanos - priority * AGING_STEP_NANOS;
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask<?> other) {
+			int result = Long.compare(virtualTime(), other.virtualTime());
+			return result != 0 ? result : Long.compare(seq, other.seq);
+		}
+	}
+}
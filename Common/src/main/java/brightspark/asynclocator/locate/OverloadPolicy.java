@@ -0,0 +1,14 @@
+package brightspark.asynclocator.locate;
+
+/**
+ * What the locating executor does with a new task when its queue is full.
+ * <p>
+ * Either way, a task that doesn't make it into the queue completes as rejected. Most features then carry on as if
+ * nothing was found, while the locate commands tell the sender to try again.
+ */
+public enum OverloadPolicy {
+	// Turn the new task away
+	REJECT,
+	// Make room by dropping the lowest priority queued task, if the new task has a higher priority than it
+	DROP_LOWEST_PRIORITY
+}
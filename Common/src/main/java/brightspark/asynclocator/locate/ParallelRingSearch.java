@@ -0,0 +1,248 @@
+package brightspark.asynclocator.locate;
+
+import com.mojang.datafixers.util.Pair;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.StructurePlacement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Searches the random spread rings of a structure search in parallel, giving the same result as the sequential ring loop
+ * in {@link StructureSearch}.
+ * <p>
+ * Vanilla stops at the first ring any placement has a structure in, and picks the nearest out of the first structure
+ * each placement has in that ring and the nearest concentric rings structure. So the work is split into shards of one
+ * placement's ring each, which threads take in ring order. Once a ring is known to have a structure, shards for rings
+ * further out are skipped, and scans already running for them are abandoned.
+ * <p>
+ * The nearest candidate found so far in that ring is kept as a shared bound. Any shard in the same ring whose cells are
+ * all further away than the bound can't be the answer, so it's skipped. Rings where every cell is further away than the
+ * nearest concentric rings structure can't change the answer either, so searching stops there.
+ * <p>
+ * A radius band is reported to the {@link LocateProgress} once every shard up to its edge has been searched without
+ * finding anything.
+ */
+class ParallelRingSearch {
+	private static final Abandoned ABANDONED = new Abandoned();
+
+	private final ServerLevel level;
+	private final StructureManager structureManager;
+	private final @Nullable StructureStore store;
+	private final @Nullable LiveStructureIndex liveIndex;
+	private final List<Map.Entry<StructurePlacement, Set<Holder<Structure>>>> placements;
+	private final BlockPos pos;
+	private final int chunkX;
+	private final int chunkZ;
+	private final int searchRadius;
+	private final long seed;
+	private final CancellationToken token;
+	private final LocateProgress progress;
+
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final AtomicInteger firstHitRing = new AtomicInteger(Integer.MAX_VALUE);
+	private final AtomicReference<Bound> bound = new AtomicReference<>();
+	// The first structure for each shard, indexed by ring * placements + placement
+	private final AtomicReferenceArray<Pair<BlockPos, Holder<Structure>>> found;
+	// How many shards of each ring have been searched without finding anything
+	private final AtomicIntegerArray missedShards;
+	// The furthest ring that it and every ring before it has been searched without finding anything
+	private int missedUpTo = -1;
+	private double concentricDistSqr;
+	private volatile boolean stopped = false;
+
+	ParallelRingSearch(
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable StructureStore store,
+		@Nullable LiveStructureIndex liveIndex,
+		List<Map.Entry<StructurePlacement, Set<Holder<Structure>>>> placements,
+		BlockPos pos,
+		int chunkX,
+		int chunkZ,
+		int searchRadius,
+		long seed,
+		CancellationToken token,
+		LocateProgress progress
+	) {
+		this.level = level;
+		this.structureManager = structureManager;
+		this.store = store;
+		this.liveIndex = liveIndex;
+		this.placements = placements;
+		this.pos = pos;
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.searchRadius = searchRadius;
+		this.seed = seed;
+		this.token = token;
+		this.progress = progress;
+		this.found = new AtomicReferenceArray<>((searchRadius + 1) * placements.size());
+		this.missedShards = new AtomicIntegerArray(searchRadius + 1);
+	}
+
+	/**
+	 * Runs the search on this thread and the pool's threads.
+	 *
+	 * @param concentric The nearest concentric rings structure, which comes before the rings in vanilla's order
+	 */
+	@Nullable Pair<BlockPos, Holder<Structure>> search(
+		ForkJoinPool pool,
+		@Nullable Pair<BlockPos, Holder<Structure>> concentric,
+		double concentricDistSqr
+	) {
+		this.concentricDistSqr = concentricDistSqr;
+		List<ForkJoinTask<?>> helpers = new ArrayList<>(pool.getParallelism());
+		for (int i = 0; i < pool.getParallelism(); i++) {
+			helpers.add(pool.submit(this::work));
+		}
+		try {
+			work();
+			for (ForkJoinTask<?> helper : helpers) {
+				helper.join();
+			}
+		} finally {
+			stopped = true;
+		}
+
+		int ring = firstHitRing.get();
+		if (ring == Integer.MAX_VALUE) {
+			return concentric;
+		}
+		Pair<BlockPos, Holder<Structure>> nearest = concentric;
+		double nearestDistSqr = concentricDistSqr;
+		for (int i = 0; i < placements.size(); i++) {
+			Pair<BlockPos, Holder<Structure>> candidate = found.get(ring * placements.size() + i);
+			if (candidate != null) {
+				double distSqr = pos.distSqr(candidate.getFirst());
+				if (distSqr < nearestDistSqr) {
+					nearestDistSqr = distSqr;
+					nearest = candidate;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private void work() {
+		while (!stopped) {
+			int shard = nextShard.getAndIncrement();
+			int ring = shard / placements.size();
+			int index = shard % placements.size();
+			if (ring > searchRadius || ring > firstHitRing.get() || ringMinDistSqr(ring) > concentricDistSqr) {
+				return;
+			}
+			if (isPruned(ring, index)) {
+				continue;
+			}
+
+			Map.Entry<StructurePlacement, Set<Holder<Structure>>> entry = placements.get(index);
+			Pair<BlockPos, Holder<Structure>> result;
+			try {
+				result = StructureSearch.firstInRing(
+					entry.getValue(), level, structureManager, store, liveIndex, chunkX, chunkZ, ring, false, seed,
+					(RandomSpreadStructurePlacement) entry.getKey(),
+					() -> checkpoint(ring)
+				);
+			} catch (Abandoned e) {
+				continue;
+			} catch (RuntimeException e) {
+				stopped = true;
+				throw e;
+			}
+			if (result != null) {
+				found.set(shard, result);
+				firstHitRing.accumulateAndGet(ring, Math::min);
+				offerBound(ring, pos.distSqr(result.getFirst()));
+			} else if (missedShards.incrementAndGet(ring) == placements.size()) {
+				reportMissedRings();
+			}
+		}
+	}
+
+	// Pruned and abandoned shards only happen once something has been found, after which there's no progress to report
+	private synchronized void reportMissedRings() {
+		while (missedUpTo < searchRadius && missedShards.get(missedUpTo + 1) == placements.size()) {
+			missedUpTo++;
+			if (LocateProgress.isBand(missedUpTo, searchRadius)) {
+				progress.report(new LocateProgress.Stage(missedUpTo, searchRadius));
+			}
+		}
+	}
+
+	private void checkpoint(int ring) {
+		token.checkpoint();
+		if (stopped || ring > firstHitRing.get()) {
+			throw ABANDONED;
+		}
+	}
+
+	/*
+	 * Only used once the ring is known to have a structure, so skipping the shard can't change which ring is the first
+	 * with a structure. The bound is an actual candidate, so a shard that can only be further away can't win.
+	 */
+	private boolean isPruned(int ring, int index) {
+		Bound current = bound.get();
+		if (current == null || current.ring() != ring) {
+			return false;
+		}
+		double limit = Math.min(current.distSqr(), concentricDistSqr);
+		return minDistSqr((RandomSpreadStructurePlacement) placements.get(index).getKey(), ring) > limit;
+	}
+
+	private void offerBound(int ring, double distSqr) {
+		bound.accumulateAndGet(new Bound(ring, distSqr), (current, offered) ->
+			current == null
+				|| offered.ring() < current.ring()
+				|| (offered.ring() == current.ring() && offered.distSqr() < current.distSqr())
+				? offered
+				: current
+		);
+	}
+
+	// The closest any structure in the ring could be for any placement
+	private double ringMinDistSqr(int ring) {
+		double min = Double.MAX_VALUE;
+		for (Map.Entry<StructurePlacement, Set<Holder<Structure>>> entry : placements) {
+			min = Math.min(min, minDistSqr((RandomSpreadStructurePlacement) entry.getKey(), ring));
+		}
+		return min;
+	}
+
+	/*
+	 * Cells in the ring are the ring's number of cells away from the origin chunk's cell on at least one axis, so any
+	 * chunk in them is at least (ring - 1) cells of chunks away from the origin chunk on that axis. The locate offset
+	 * can bring the located position back towards the origin a little.
+	 */
+	private double minDistSqr(RandomSpreadStructurePlacement placement, int ring) {
+		BlockPos offset = placement.getLocatePos(new ChunkPos(0, 0));
+		int slack = Math.max(Math.abs(offset.getX()), Math.abs(offset.getZ()));
+		double dist = Math.max(0, SectionPos.sectionToBlockCoord((ring - 1) * placement.spacing()) - slack);
+		return dist * dist;
+	}
+
+	private record Bound(int ring, double distSqr) {}
+
+	// Unwinds a scan of a ring that's no longer needed
+	private static class Abandoned extends RuntimeException {
+		private Abandoned() {
+			super(null, null, false, false);
+		}
+	}
+}
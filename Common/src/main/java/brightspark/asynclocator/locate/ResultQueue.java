@@ -0,0 +1,125 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.platform.Services;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of finished locates waiting to be applied on the server thread, such as filling in a map and updating the
+ * container it's in. It's drained at the end of each tick for up to
+ * {@link brightspark.asynclocator.platform.services.ConfigHelper#resultApplyBudgetMicros()}, and whatever doesn't fit
+ * waits for the next tick, so a burst of results can't hold up a single tick. At least one is applied each tick, so
+ * the queue always moves however small the budget is.
+ * <p>
+ * Results are kept with the server they're for, and ones left over from a server that has stopped are dropped rather
+ * than applied to the next one.
+ */
+public class ResultQueue {
+	private static final Queue<Result> QUEUE = new ConcurrentLinkedQueue<>();
+	// For stats, as the queue's own size walks the whole queue. Only counts results, not delivery callbacks
+	private static final AtomicInteger SIZE = new AtomicInteger();
+	private static final AtomicLong APPLIED = new AtomicLong();
+	private static final AtomicLong CARRIED_OVER_TICKS = new AtomicLong();
+	private static final AtomicLong MAX_DRAIN_NANOS = new AtomicLong();
+	private static volatile int lastDrained = 0;
+	private static volatile long lastDrainNanos = 0;
+
+	private ResultQueue() {}
+
+	/**
+	 * Queues the action to run on the server thread at the end of the tick, or a later one if this tick's budget is
+	 * used up.
+	 */
+	public static void submit(MinecraftServer server, Runnable action) {
+		QUEUE.add(new Result(server, action, true));
+		SIZE.incrementAndGet();
+	}
+
+	/**
+	 * Runs the callback on the server thread once the results queued before it have been applied. It's not counted as
+	 * a result and doesn't use any of the budget, so it's only for cheap bookkeeping like timing delivery.
+	 */
+	public static void onDelivered(MinecraftServer server, Runnable callback) {
+		QUEUE.add(new Result(server, callback, false));
+	}
+
+	/**
+	 * Applies queued results until the tick's budget is used up. Called at the end of each server tick.
+	 */
+	public static void drain(MinecraftServer server) {
+		if (QUEUE.isEmpty()) {
+			return;
+		}
+		long budgetNanos = TimeUnit.MICROSECONDS.toNanos(Services.CONFIG.resultApplyBudgetMicros());
+		long start = System.nanoTime();
+		long elapsed = 0;
+		int drained = 0;
+		Result result;
+		while ((result = QUEUE.poll()) != null) {
+			if (result.counted) {
+				SIZE.decrementAndGet();
+			}
+			if (result.server != server) {
+				continue;
+			}
+			try {
+				result.action.run();
+			} catch (Exception e) {
+				ALConstants.logError(e, "Exception while applying locate result");
+			}
+			if (!result.counted) {
+				continue;
+			}
+			drained++;
+			elapsed = System.nanoTime() - start;
+			if (budgetNanos > 0 && elapsed >= budgetNanos) {
+				break;
+			}
+		}
+		if (!QUEUE.isEmpty()) {
+			CARRIED_OVER_TICKS.incrementAndGet();
+		}
+		APPLIED.addAndGet(drained);
+		lastDrained = drained;
+		lastDrainNanos = elapsed;
+		MAX_DRAIN_NANOS.accumulateAndGet(elapsed, Math::max);
+	}
+
+	public static int size() {
+		return SIZE.get();
+	}
+
+	public static long applied() {
+		return APPLIED.get();
+	}
+
+	/**
+	 * How many ticks ended with results still waiting.
+	 */
+	public static long carriedOverTicks() {
+		return CARRIED_OVER_TICKS.get();
+	}
+
+	/**
+	 * How many results the last tick with any applied, and how long it took.
+	 */
+	public static int lastDrained() {
+		return lastDrained;
+	}
+
+	public static long lastDrainNanos() {
+		return lastDrainNanos;
+	}
+
+	public static long maxDrainNanos() {
+		return MAX_DRAIN_NANOS.get();
+	}
+
+	private record Result(MinecraftServer server, Runnable action, boolean counted) {}
+}
@@ -0,0 +1,57 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.platform.Services;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The work-stealing pool parallel searches split their work onto, sized by
+ * {@link brightspark.asynclocator.platform.services.ConfigHelper#parallelSearchThreads()}.
+ * <p>
+ * The locating thread running a parallel search works on it too, so this only holds the extra helper threads.
+ */
+public class SearchPool {
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(1);
+	private static ForkJoinPool POOL = null;
+
+	private SearchPool() {}
+
+	/**
+	 * Gets the pool, or null if parallel searching is turned off.
+	 */
+	public static synchronized @Nullable ForkJoinPool get() {
+		int threads = Services.CONFIG.parallelSearchThreads();
+		if (threads <= 0) {
+			return null;
+		}
+		if (POOL == null || POOL.isShutdown() || POOL.getParallelism() != threads) {
+			if (POOL != null) {
+				POOL.shutdown();
+			}
+			ALConstants.logInfo("Starting parallel search pool with {} threads", threads);
+			POOL = new ForkJoinPool(
+				threads,
+				pool -> {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName(ALConstants.MOD_ID + "-search-" + THREAD_COUNTER.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				},
+				(thread, e) -> ALConstants.logError(e, "Uncaught exception in search thread {}", thread.getName()),
+				false
+			);
+		}
+		return POOL;
+	}
+
+	public static synchronized void shutdown() {
+		if (POOL != null) {
+			POOL.shutdownNow();
+			POOL = null;
+		}
+	}
+}
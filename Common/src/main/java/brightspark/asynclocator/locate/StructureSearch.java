@@ -0,0 +1,521 @@
+package brightspark.asynclocator.locate;
+
+import com.mojang.datafixers.util.Pair;
+import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
+import it.unimi.dsi.fastutil.objects.ObjectArraySet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureCheckResult;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.StructurePlacement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Port of {@link net.minecraft.world.level.chunk.ChunkGenerator#findNearestMapStructure} that checks a
+ * {@link CancellationToken} between every structure check, so a search that's no longer wanted stops within one
+ * structure check instead of running to the end of its radius.
+ * <p>
+ * Each radius band of rings searched without finding anything is reported to the {@link LocateProgress}.
+ * <p>
+ * Chunks the {@link LiveStructureIndex} knows the structure starts of are answered from it, and structure starts
+ * already in the {@link StructureStore} are taken from there, instead of checking the chunk. New ones found are added
+ * to the store. Holders are still gone through in the same order, so the result is the same.
+ * <p>
+ * Concentric rings candidates are gone through nearest first using the {@link ConcentricRingIndex}, stopping at the
+ * first with a structure, instead of checking every candidate closer than the nearest found so far. Eye of ender
+ * locates only have stronghold candidates to check this way, so they come down to a few structure checks. Random spread
+ * placements that modded tags add are still searched ring by ring.
+ * <p>
+ * The order things are checked in, and so the result, is the same as vanilla. When parallel searching is turned on,
+ * the random spread rings are searched by {@link ParallelRingSearch} instead, which gives the same result.
+ */
+public class StructureSearch {
+	// Smaller searches finish too quickly to be worth splitting up
+	private static final int MIN_PARALLEL_RADIUS = 8;
+
+	private StructureSearch() {}
+
+	public static @Nullable Pair<BlockPos, Holder<Structure>> findNearestMapStructure(
+		ServerLevel level,
+		HolderSet<Structure> structureSet,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures,
+		CancellationToken token,
+		LocateProgress progress
+	) {
+		ChunkGeneratorStructureState state = level.getChunkSource().getGeneratorState();
+		Map<StructurePlacement, Set<Holder<Structure>>> placements = placementsFor(state, structureSet);
+		if (placements.isEmpty()) {
+			return null;
+		}
+
+		Pair<BlockPos, Holder<Structure>> nearest = null;
+		double nearestDistSqr = Double.MAX_VALUE;
+		StructureManager structureManager = level.structureManager();
+		StructureStore store = StructureStore.get(level);
+		LiveStructureIndex liveIndex = LiveStructureIndex.get(level);
+		List<Map.Entry<StructurePlacement, Set<Holder<Structure>>>> randomSpreads = new ArrayList<>(placements.size());
+		for (Map.Entry<StructurePlacement, Set<Holder<Structure>>> entry : placements.entrySet()) {
+			if (entry.getKey() instanceof ConcentricRingsStructurePlacement concentric) {
+				Pair<BlockPos, Holder<Structure>> found = nearestConcentric(
+					entry.getValue(), level, structureManager, store, liveIndex, pos, skipKnownStructures, concentric,
+					token
+				);
+				if (found != null) {
+					double distSqr = pos.distSqr(found.getFirst());
+					if (distSqr < nearestDistSqr) {
+						nearestDistSqr = distSqr;
+						nearest = found;
+					}
+				}
+			} else if (entry.getKey() instanceof RandomSpreadStructurePlacement) {
+				randomSpreads.add(entry);
+			}
+		}
+
+		if (randomSpreads.isEmpty()) {
+			return nearest;
+		}
+		int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+		int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+		long seed = state.getLevelSeed();
+
+		// Searches that skip known structures reference what they find, so they have to check things in vanilla's order
+		ForkJoinPool pool = skipKnownStructures || searchRadius < MIN_PARALLEL_RADIUS ? null : SearchPool.get();
+		if (pool != null) {
+			return new ParallelRingSearch(
+				level, structureManager, store, liveIndex, randomSpreads, pos, chunkX, chunkZ, searchRadius, seed, token,
+				progress
+			).search(pool, nearest, nearestDistSqr);
+		}
+
+		for (int ring = 0; ring <= searchRadius; ring++) {
+			boolean foundInRing = false;
+			for (Map.Entry<StructurePlacement, Set<Holder<Structure>>> entry : randomSpreads) {
+				Pair<BlockPos, Holder<Structure>> found = firstInRing(
+					entry.getValue(), level, structureManager, store, liveIndex, chunkX, chunkZ, ring, skipKnownStructures,
+					seed, (RandomSpreadStructurePlacement) entry.getKey(), token::checkpoint
+				);
+				if (found != null) {
+					foundInRing = true;
+					double distSqr = pos.distSqr(found.getFirst());
+					if (distSqr < nearestDistSqr) {
+						nearestDistSqr = distSqr;
+						nearest = found;
+					}
+				}
+			}
+			if (foundInRing) {
+				return nearest;
+			}
+			if (LocateProgress.isBand(ring, searchRadius)) {
+				progress.report(new LocateProgress.Stage(ring, searchRadius));
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Searches for the nearest structure of each of several structure sets from the same origin in one pass, giving each
+	 * the same result as {@link #findNearestMapStructure}.
+	 * <p>
+	 * The random spread rings are walked once for all of them. The cells of a placement that several targets use are only
+	 * worked out once per ring, and every target still searching checks them in turn. Each target stops at the first ring
+	 * it has a structure in, as vanilla does, and is handed to the callback straight away instead of waiting for the rest.
+	 * <p>
+	 * Searches that skip known structures reference what they find, so targets with structures in common could change
+	 * each other's results depending on the order things are checked in. Those are searched one after another in the
+	 * order given instead, as separate searches would be.
+	 *
+	 * @param progress The progress of each target
+	 * @param results Given each target's result, once it has one
+	 */
+	public static void findNearestMapStructures(
+		ServerLevel level,
+		List<HolderSet<Structure>> structureSets,
+		BlockPos pos,
+		int searchRadius,
+		boolean skipKnownStructures,
+		CancellationToken token,
+		List<LocateProgress> progress,
+		BatchResults results
+	) {
+		if (skipKnownStructures && !disjoint(structureSets)) {
+			for (int i = 0; i < structureSets.size(); i++) {
+				results.found(i, findNearestMapStructure(
+					level, structureSets.get(i), pos, searchRadius, true, token, progress.get(i)
+				));
+			}
+			return;
+		}
+
+		ChunkGeneratorStructureState state = level.getChunkSource().getGeneratorState();
+		StructureManager structureManager = level.structureManager();
+		StructureStore store = StructureStore.get(level);
+		LiveStructureIndex liveIndex = LiveStructureIndex.get(level);
+		List<BatchTarget> open = new ArrayList<>(structureSets.size());
+		Map<RandomSpreadStructurePlacement, List<BatchMember>> members = new Object2ObjectArrayMap<>();
+		for (int i = 0; i < structureSets.size(); i++) {
+			Map<StructurePlacement, Set<Holder<Structure>>> placements = placementsFor(state, structureSets.get(i));
+			BatchTarget target = new BatchTarget(i);
+			for (Map.Entry<StructurePlacement, Set<Holder<Structure>>> entry : placements.entrySet()) {
+				if (entry.getKey() instanceof ConcentricRingsStructurePlacement concentric) {
+					Pair<BlockPos, Holder<Structure>> found = nearestConcentric(
+						entry.getValue(), level, structureManager, store, liveIndex, pos, skipKnownStructures, concentric,
+						token
+					);
+					if (found != null) {
+						target.offer(found, pos.distSqr(found.getFirst()));
+					}
+				} else if (entry.getKey() instanceof RandomSpreadStructurePlacement randomSpread) {
+					BatchMember member = new BatchMember(target, entry.getValue());
+					target.members.add(member);
+					members.computeIfAbsent(randomSpread, p -> new ArrayList<>()).add(member);
+				}
+			}
+			if (target.members.isEmpty()) {
+				results.found(i, target.nearest);
+			} else {
+				open.add(target);
+			}
+		}
+
+		int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+		int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+		long seed = state.getLevelSeed();
+		for (int ring = 0; ring <= searchRadius && !open.isEmpty(); ring++) {
+			for (Map.Entry<RandomSpreadStructurePlacement, List<BatchMember>> entry : members.entrySet()) {
+				searchRing(
+					entry.getValue(), level, structureManager, store, liveIndex, chunkX, chunkZ, ring, skipKnownStructures,
+					seed, entry.getKey(), token
+				);
+			}
+			// Candidates are compared in each target's own placement order, so ties go the same way as in vanilla
+			for (Iterator<BatchTarget> iterator = open.iterator(); iterator.hasNext(); ) {
+				BatchTarget target = iterator.next();
+				boolean foundInRing = false;
+				for (BatchMember member : target.members) {
+					if (member.foundInRing != null) {
+						foundInRing = true;
+						target.offer(member.foundInRing, pos.distSqr(member.foundInRing.getFirst()));
+						member.foundInRing = null;
+					}
+				}
+				if (foundInRing) {
+					target.done = true;
+					iterator.remove();
+					results.found(target.index, target.nearest);
+				} else if (LocateProgress.isBand(ring, searchRadius)) {
+					progress.get(target.index).report(new LocateProgress.Stage(ring, searchRadius));
+				}
+			}
+		}
+		for (BatchTarget target : open) {
+			results.found(target.index, target.nearest);
+		}
+	}
+
+	// Every placement member of a target that's still searching gets the first structure it has in the ring
+	private static void searchRing(
+		List<BatchMember> members,
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable StructureStore store,
+		@Nullable LiveStructureIndex liveIndex,
+		int chunkX,
+		int chunkZ,
+		int ring,
+		boolean skipKnownStructures,
+		long seed,
+		RandomSpreadStructurePlacement placement,
+		CancellationToken token
+	) {
+		int searching = 0;
+		for (BatchMember member : members) {
+			if (!member.target.done) {
+				searching++;
+			}
+		}
+		int spacing = placement.spacing();
+		for (int x = -ring; x <= ring && searching > 0; x++) {
+			boolean edgeX = x == -ring || x == ring;
+			for (int z = -ring; z <= ring && searching > 0; z++) {
+				boolean edgeZ = z == -ring || z == ring;
+				if (!edgeX && !edgeZ) {
+					continue;
+				}
+				ChunkPos chunkPos = placement.getPotentialStructureChunk(seed, chunkX + spacing * x, chunkZ + spacing * z);
+				for (BatchMember member : members) {
+					if (member.target.done || member.foundInRing != null) {
+						continue;
+					}
+					member.foundInRing = structureAt(
+						member.structures, level, structureManager, store, liveIndex, skipKnownStructures, placement,
+						chunkPos, token::checkpoint
+					);
+					if (member.foundInRing != null) {
+						searching--;
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean disjoint(List<HolderSet<Structure>> structureSets) {
+		Set<Holder<Structure>> seen = new HashSet<>();
+		for (HolderSet<Structure> structureSet : structureSets) {
+			for (Holder<Structure> holder : structureSet) {
+				if (!seen.add(holder)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Map<StructurePlacement, Set<Holder<Structure>>> placementsFor(
+		ChunkGeneratorStructureState state,
+		HolderSet<Structure> structureSet
+	) {
+		Map<StructurePlacement, Set<Holder<Structure>>> placements = new Object2ObjectArrayMap<>();
+		for (Holder<Structure> holder : structureSet) {
+			for (StructurePlacement placement : state.getPlacementsForStructure(holder)) {
+				placements.computeIfAbsent(placement, p -> new ObjectArraySet<>()).add(holder);
+			}
+		}
+		return placements;
+	}
+
+	private static @Nullable Pair<BlockPos, Holder<Structure>> nearestConcentric(
+		Set<Holder<Structure>> structures,
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable StructureStore store,
+		@Nullable LiveStructureIndex liveIndex,
+		BlockPos pos,
+		boolean skipKnownStructures,
+		ConcentricRingsStructurePlacement placement,
+		CancellationToken token
+	) {
+		if (skipKnownStructures) {
+			return nearestConcentricInOrder(structures, level, structureManager, liveIndex, pos, placement, token);
+		}
+		ConcentricRingIndex index = ConcentricRingIndex.get(level, placement);
+		if (index == null) {
+			throw new IllegalStateException("Somehow tried to find structures for a placement that doesn't exist");
+		}
+		// Vanilla's result is the nearest candidate with a structure, so the first one found going nearest first
+		for (ChunkPos chunkPos : index.nearestFirst(pos)) {
+			Pair<BlockPos, Holder<Structure>> found = structureAt(
+				structures, level, structureManager, store, liveIndex, false, placement, chunkPos, token::checkpoint
+			);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Searches that skip known structures reference every structure they come across that's closer than the nearest so
+	 * far, so they have to go through the candidates in vanilla's order.
+	 */
+	private static @Nullable Pair<BlockPos, Holder<Structure>> nearestConcentricInOrder(
+		Set<Holder<Structure>> structures,
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable LiveStructureIndex liveIndex,
+		BlockPos pos,
+		ConcentricRingsStructurePlacement placement,
+		CancellationToken token
+	) {
+		List<ChunkPos> ringPositions = level.getChunkSource().getGeneratorState().getRingPositionsFor(placement);
+		if (ringPositions == null) {
+			throw new IllegalStateException("Somehow tried to find structures for a placement that doesn't exist");
+		}
+		Pair<BlockPos, Holder<Structure>> nearest = null;
+		double nearestDistSqr = Double.MAX_VALUE;
+		BlockPos.MutableBlockPos candidatePos = new BlockPos.MutableBlockPos();
+		for (ChunkPos chunkPos : ringPositions) {
+			candidatePos.set(SectionPos.sectionToBlockCoord(chunkPos.x, 8), 32, SectionPos.sectionToBlockCoord(chunkPos.z, 8));
+			double distSqr = candidatePos.distSqr(pos);
+			if (nearest == null || distSqr < nearestDistSqr) {
+				Pair<BlockPos, Holder<Structure>> found = structureAt(
+					structures, level, structureManager, null, liveIndex, true, placement, chunkPos, token::checkpoint
+				);
+				if (found != null) {
+					nearest = found;
+					nearestDistSqr = distSqr;
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/*
+	 * The first structure in the square ring of placement cells the given number of cells away from the origin chunk's
+	 * cell, checked in the same order as vanilla.
+	 */
+	static @Nullable Pair<BlockPos, Holder<Structure>> firstInRing(
+		Set<Holder<Structure>> structures,
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable StructureStore store,
+		@Nullable LiveStructureIndex liveIndex,
+		int chunkX,
+		int chunkZ,
+		int ring,
+		boolean skipKnownStructures,
+		long seed,
+		RandomSpreadStructurePlacement placement,
+		Runnable checkpoint
+	) {
+		int spacing = placement.spacing();
+		for (int x = -ring; x <= ring; x++) {
+			boolean edgeX = x == -ring || x == ring;
+			for (int z = -ring; z <= ring; z++) {
+				boolean edgeZ = z == -ring || z == ring;
+				if (edgeX || edgeZ) {
+					ChunkPos chunkPos = placement.getPotentialStructureChunk(seed, chunkX + spacing * x, chunkZ + spacing * z);
+					Pair<BlockPos, Holder<Structure>> found = structureAt(
+						structures, level, structureManager, store, liveIndex, skipKnownStructures, placement, chunkPos,
+						checkpoint
+					);
+					if (found != null) {
+						return found;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static @Nullable Pair<BlockPos, Holder<Structure>> structureAt(
+		Set<Holder<Structure>> structures,
+		ServerLevel level,
+		StructureManager structureManager,
+		@Nullable StructureStore store,
+		@Nullable LiveStructureIndex liveIndex,
+		boolean skipKnownStructures,
+		StructurePlacement placement,
+		ChunkPos chunkPos,
+		Runnable checkpoint
+	) {
+		for (Holder<Structure> holder : structures) {
+			checkpoint.run();
+			StructureCheckResult known = liveIndex == null
+				? StructureCheckResult.CHUNK_LOAD_NEEDED
+				: liveIndex.check(chunkPos, holder.value());
+			if (known == StructureCheckResult.START_NOT_PRESENT) {
+				continue;
+			}
+			// Searches that skip known structures still have to get the start to reference it
+			if (known == StructureCheckResult.START_PRESENT && !skipKnownStructures) {
+				return Pair.of(placement.getLocatePos(chunkPos), holder);
+			}
+			ResourceKey<Structure> structureKey = store == null ? null : holder.unwrapKey().orElse(null);
+			// Searches that skip known structures have to check whether the start has been referenced yet
+			if (structureKey != null && !skipKnownStructures && store.contains(level.dimension(), structureKey, chunkPos)) {
+				return Pair.of(placement.getLocatePos(chunkPos), holder);
+			}
+			StructureCheckResult checkResult =
+				structureManager.checkStructurePresence(chunkPos, holder.value(), placement, skipKnownStructures);
+			if (checkResult == StructureCheckResult.START_NOT_PRESENT) {
+				continue;
+			}
+			if (!skipKnownStructures && checkResult == StructureCheckResult.START_PRESENT) {
+				if (structureKey != null) {
+					store.add(level.dimension(), structureKey, chunkPos);
+				}
+				return Pair.of(placement.getLocatePos(chunkPos), holder);
+			}
+			// Waits on the server's chunk system, so another task can use the CPU meanwhile
+			ChunkAccess chunk = CpuPermits.blocking(
+				() -> level.getChunk(chunkPos.x, chunkPos.z, ChunkStatus.STRUCTURE_STARTS)
+			);
+			// Chunks that were already in memory don't tell the index about their starts again
+			if (liveIndex != null) {
+				liveIndex.record(chunk.getPos(), chunk.getAllStarts());
+			}
+			StructureStart start = structureManager.getStartForStructure(SectionPos.bottomOf(chunk), holder.value(), chunk);
+			if (start == null || !start.isValid()) {
+				continue;
+			}
+			if (structureKey != null) {
+				store.add(level.dimension(), structureKey, start.getChunkPos());
+			}
+			if (!skipKnownStructures || tryAddReference(structureManager, start)) {
+				return Pair.of(placement.getLocatePos(start.getChunkPos()), holder);
+			}
+		}
+		return null;
+	}
+
+	private static boolean tryAddReference(StructureManager structureManager, StructureStart start) {
+		if (start.canBeReferenced()) {
+			structureManager.addReference(start);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Receives the results of {@link #findNearestMapStructures} as each target finishes.
+	 */
+	public interface BatchResults {
+		void found(int target, @Nullable Pair<BlockPos, Holder<Structure>> result);
+	}
+
+	private static final class BatchTarget {
+		private final int index;
+		// A target's random spread placements, in its own order
+		private final List<BatchMember> members = new ArrayList<>();
+		private @Nullable Pair<BlockPos, Holder<Structure>> nearest = null;
+		private double nearestDistSqr = Double.MAX_VALUE;
+		private boolean done = false;
+
+		private BatchTarget(int index) {
+			this.index = index;
+		}
+
+		private void offer(Pair<BlockPos, Holder<Structure>> found, double distSqr) {
+			if (distSqr < nearestDistSqr) {
+				nearestDistSqr = distSqr;
+				nearest = found;
+			}
+		}
+	}
+
+	// One target's structures for one random spread placement
+	private static final class BatchMember {
+		private final BatchTarget target;
+		private final Set<Holder<Structure>> structures;
+		private @Nullable Pair<BlockPos, Holder<Structure>> foundInRing = null;
+
+		private BatchMember(BatchTarget target, Set<Holder<Structure>> structures) {
+			this.target = target;
+			this.structures = structures;
+		}
+	}
+}
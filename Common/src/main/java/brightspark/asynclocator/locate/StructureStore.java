@@ -0,0 +1,461 @@
+package brightspark.asynclocator.locate;
+
+import brightspark.asynclocator.ALConstants;
+import brightspark.asynclocator.platform.Services;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.MultiNoiseBiomeSourceParameterList;
+import net.minecraft.world.level.dimension.LevelStem;
+import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureSet;
+import net.minecraft.world.level.levelgen.structure.pools.StructureTemplatePool;
+import net.minecraft.world.level.storage.LevelResource;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Structure starts found by searches, kept in the world folder so they're still known after a restart.
+ * <p>
+ * Only valid structure starts are stored, keyed by dimension, structure and chunk. Starts only depend on the world seed
+ * and the worldgen registries, so the store is stamped with the seed and a fingerprint of those registries and their
+ * tags, and starts again from empty if either has changed, e.g. after a datapack change. Tags can change on a datapack
+ * reload too, so the store is closed then and checked again the next time it's used.
+ * <p>
+ * It's made of three files in the asynclocator folder of the world:
+ * <ul>
+ *     <li>structures.names - The dimension and structure of each key id, one per line.</li>
+ *     <li>structures.log - Fixed size records of a key id and chunk, only ever appended to.</li>
+ *     <li>structures.idx - An open addressing hash table of the log's records, memory-mapped so lookups don't need the
+ *     store on the heap. It can always be rebuilt from the log, so it's fine for it to lag behind or be lost.</li>
+ * </ul>
+ * A record torn by a crash fails its checksum, and the log is cut back to before it on the next load.
+ */
+public class StructureStore {
+	private static final int LOG_MAGIC = 0x414C534C; // ALSL
+	private static final int INDEX_MAGIC = 0x414C5349; // ALSI
+	private static final int VERSION = 1;
+	private static final int LOG_HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 16;
+	private static final int INDEX_HEADER_SIZE = 64;
+	private static final int SLOT_SIZE = 16;
+	private static final int MIN_CAPACITY = 1 << 14;
+	private static final int CHECKSUM_SALT = 0x5F3759DF;
+
+	// Every level of a world shares its store, and each level looks it up once
+	private static final Map<ServerLevel, Optional<StructureStore>> STORES = new ConcurrentHashMap<>();
+	// Guarded by StructureStore.class
+	private static StructureStore OPEN = null;
+
+	private final MinecraftServer server;
+	private final long seed;
+	private final long fingerprint;
+	private final Path namesPath;
+	private final FileChannel log;
+	private final FileChannel index;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// Guarded by lock
+	private final Map<String, Integer> ids = new HashMap<>();
+	private MappedByteBuffer slots;
+	private int capacity;
+	private int count;
+	private long records;
+	private boolean closed;
+
+	private StructureStore(MinecraftServer server, Path folder, long fingerprint) throws IOException {
+		this.server = server;
+		this.seed = server.getWorldData().worldGenOptions().seed();
+		this.fingerprint = fingerprint;
+		Files.createDirectories(folder);
+		namesPath = folder.resolve("structures.names");
+		log = FileChannel.open(folder.resolve("structures.log"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(folder.resolve("structures.idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			load();
+		} catch (IOException | RuntimeException e) {
+			closeChannels();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the store for the level's world, opening it if needed, or null if it's turned off or couldn't be opened.
+	 */
+	public static @Nullable StructureStore get(ServerLevel level) {
+		if (!Services.CONFIG.persistentStructureStore()) {
+			return null;
+		}
+		Optional<StructureStore> store = STORES.get(level);
+		if (store == null) {
+			// Worked out first, as it walks the registries and computeIfAbsent holds up other lookups while it runs
+			long fingerprint = fingerprint(level.getServer().registryAccess());
+			store = STORES.computeIfAbsent(level, l -> Optional.ofNullable(open(l.getServer(), fingerprint)));
+		}
+		return store.orElse(null);
+	}
+
+	private static synchronized @Nullable StructureStore open(MinecraftServer server, long fingerprint) {
+		if (OPEN != null && OPEN.server == server) {
+			return OPEN;
+		}
+		// Not close(), as this runs inside computeIfAbsent and can't change the map
+		closeOpen();
+		try {
+			OPEN = new StructureStore(
+				server,
+				server.getWorldPath(LevelResource.ROOT).resolve(ALConstants.MOD_ID),
+				fingerprint
+			);
+		} catch (IOException | RuntimeException e) {
+			ALConstants.logError(e, "Failed to open structure store - carrying on without it");
+			return null;
+		}
+		return OPEN;
+	}
+
+	// Not synchronized, as opening a store takes the lock from inside the map
+	public static void close() {
+		STORES.clear();
+		closeOpen();
+	}
+
+	private static synchronized void closeOpen() {
+		if (OPEN != null) {
+			OPEN.lock.writeLock().lock();
+			try {
+				OPEN.closed = true;
+				OPEN.slots.force();
+				OPEN.closeChannels();
+			} catch (IOException | RuntimeException e) {
+				ALConstants.logError(e, "Failed to close structure store");
+			} finally {
+				OPEN.lock.writeLock().unlock();
+				OPEN = null;
+			}
+		}
+	}
+
+	/**
+	 * Whether a valid start of the structure is known to be in the chunk.
+	 */
+	public boolean contains(ResourceKey<Level> dimension, ResourceKey<Structure> structure, ChunkPos chunkPos) {
+		lock.readLock().lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			Integer id = ids.get(name(dimension, structure));
+			return id != null && find(id, chunkPos.toLong()) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores that there's a valid start of the structure in the chunk.
+	 */
+	public void add(ResourceKey<Level> dimension, ResourceKey<Structure> structure, ChunkPos chunkPos) {
+		String name = name(dimension, structure);
+		long pos = chunkPos.toLong();
+		lock.readLock().lock();
+		try {
+			Integer id = ids.get(name);
+			if (closed || (id != null && find(id, pos) >= 0)) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		lock.writeLock().lock();
+		try {
+			// Searches started before a reload can still be holding on to the store
+			if (closed) {
+				return;
+			}
+			Integer id = ids.get(name);
+			if (id == null) {
+				id = ids.size();
+				// The name goes in before any record that uses it
+				Files.writeString(namesPath, name + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				ids.put(name, id);
+			} else if (find(id, pos) >= 0) {
+				return;
+			}
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			writeRecord(record, id, pos);
+			record.flip();
+			log.write(record, LOG_HEADER_SIZE + records * RECORD_SIZE);
+			records++;
+			insert(id, pos);
+			slots.putLong(24, records);
+		} catch (IOException e) {
+			ALConstants.logError(e, "Failed to store structure start for {} at {}", structure.location(), chunkPos);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static String name(ResourceKey<Level> dimension, ResourceKey<Structure> structure) {
+		return dimension.location() + " " + structure.location();
+	}
+
+	private void load() throws IOException {
+		if (!readLogHeader()) {
+			ALConstants.logInfo("Structure store is new or for a different seed or worldgen - starting it from empty");
+			log.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+			header.putInt(LOG_MAGIC).putInt(VERSION).putLong(seed).putLong(fingerprint).putLong(0).flip();
+			log.write(header, 0);
+			Files.writeString(namesPath, "", StandardCharsets.UTF_8);
+			records = 0;
+		} else {
+			loadNames();
+			records = validRecords();
+			log.truncate(LOG_HEADER_SIZE + records * RECORD_SIZE);
+		}
+
+		long indexed = readIndexHeader();
+		if (indexed < 0 || indexed > records) {
+			rebuildIndex(capacityFor(records));
+		} else {
+			for (long i = indexed; i < records; i++) {
+				ByteBuffer record = readRecord(i);
+				insert(record.getInt(0), record.getLong(8));
+			}
+			slots.putLong(24, records);
+		}
+		ALConstants.logInfo("Loaded structure store with {} known structure starts", count);
+	}
+
+	private boolean readLogHeader() throws IOException {
+		if (log.size() < LOG_HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+		log.read(header, 0);
+		return header.getInt(0) == LOG_MAGIC
+			&& header.getInt(4) == VERSION
+			&& header.getLong(8) == seed
+			&& header.getLong(16) == fingerprint;
+	}
+
+	// A last line without a newline was cut off by a crash, and no record can use it
+	private void loadNames() throws IOException {
+		ids.clear();
+		if (!Files.exists(namesPath)) {
+			return;
+		}
+		String content = Files.readString(namesPath, StandardCharsets.UTF_8);
+		int end = content.lastIndexOf('\n') + 1;
+		List<String> names = new ArrayList<>(List.of(content.substring(0, end).split("\n")));
+		names.removeIf(String::isEmpty);
+		for (String name : names) {
+			ids.put(name, ids.size());
+		}
+		if (end != content.length()) {
+			Files.writeString(namesPath, content.substring(0, end), StandardCharsets.UTF_8);
+		}
+	}
+
+	// The number of whole, intact records before anything torn by a crash
+	private long validRecords() throws IOException {
+		long whole = (log.size() - LOG_HEADER_SIZE) / RECORD_SIZE;
+		for (long i = 0; i < whole; i++) {
+			ByteBuffer record = readRecord(i);
+			int id = record.getInt(0);
+			long pos = record.getLong(8);
+			if (id < 0 || id >= ids.size() || record.getInt(4) != checksum(id, pos)) {
+				ALConstants.logWarn("Structure store log is damaged after {} records - dropping the rest", i);
+				return i;
+			}
+		}
+		return whole;
+	}
+
+	private ByteBuffer readRecord(long i) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		log.read(record, LOG_HEADER_SIZE + i * RECORD_SIZE);
+		return record;
+	}
+
+	private static void writeRecord(ByteBuffer buffer, int id, long pos) {
+		buffer.putInt(id).putInt(checksum(id, pos)).putLong(pos);
+	}
+
+	private static int checksum(int id, long pos) {
+		return HashCommon.mix(id ^ (int) pos ^ (int) (pos >>> 32) ^ CHECKSUM_SALT);
+	}
+
+	// The number of log records the index covers, or -1 if it has to be rebuilt
+	private long readIndexHeader() throws IOException {
+		if (index.size() < INDEX_HEADER_SIZE) {
+			return -1;
+		}
+		ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+		index.read(header, 0);
+		int storedCapacity = header.getInt(32);
+		if (header.getInt(0) != INDEX_MAGIC
+			|| header.getInt(4) != VERSION
+			|| header.getLong(8) != seed
+			|| header.getLong(16) != fingerprint
+			|| Integer.bitCount(storedCapacity) != 1
+			|| index.size() < INDEX_HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+			return -1;
+		}
+		capacity = storedCapacity;
+		count = header.getInt(36);
+		slots = index.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE);
+		return header.getLong(24);
+	}
+
+	/*
+	 * Maps the index at the new size and fills it from the log. The file is only ever grown, as a file that's mapped
+	 * can't be truncated on some platforms.
+	 */
+	private void rebuildIndex(int newCapacity) throws IOException {
+		capacity = newCapacity;
+		count = 0;
+		long size = INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE;
+		slots = index.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		for (long i = 0; i < size; i += 8) {
+			slots.putLong((int) i, 0);
+		}
+		slots.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putLong(8, seed).putLong(16, fingerprint).putInt(32, capacity);
+		for (long i = 0; i < records; i++) {
+			ByteBuffer record = readRecord(i);
+			insert(record.getInt(0), record.getLong(8));
+		}
+		slots.putLong(24, records);
+	}
+
+	private static int capacityFor(long entries) {
+		return (int) Math.max(MIN_CAPACITY, HashCommon.nextPowerOfTwo(entries * 4));
+	}
+
+	// The slot holding the entry, or -1 if it's not in the index
+	private int find(int id, long pos) {
+		int mask = capacity - 1;
+		for (int slot = hash(id, pos) & mask; ; slot = (slot + 1) & mask) {
+			int offset = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+			int storedId = slots.getInt(offset + 8) - 1;
+			if (storedId < 0) {
+				return -1;
+			}
+			if (storedId == id && slots.getLong(offset) == pos) {
+				return slot;
+			}
+		}
+	}
+
+	private void insert(int id, long pos) throws IOException {
+		if ((count + 1) * 2L > capacity) {
+			// Rebuilding reads every record from the log, including the one being added
+			rebuildIndex(capacity * 2);
+			return;
+		}
+		int mask = capacity - 1;
+		for (int slot = hash(id, pos) & mask; ; slot = (slot + 1) & mask) {
+			int offset = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+			int storedId = slots.getInt(offset + 8) - 1;
+			if (storedId < 0) {
+				slots.putLong(offset, pos);
+				slots.putInt(offset + 8, id + 1);
+				count++;
+				slots.putInt(36, count);
+				return;
+			}
+			if (storedId == id && slots.getLong(offset) == pos) {
+				return;
+			}
+		}
+	}
+
+	private static int hash(int id, long pos) {
+		return (int) HashCommon.mix(pos * 31 + id);
+	}
+
+	private void closeChannels() throws IOException {
+		try {
+			log.close();
+		} finally {
+			index.close();
+		}
+	}
+
+	/*
+	 * Everything that decides where structures start, other than the seed. Entries are encoded in order of their keys, so
+	 * the same registries always give the same fingerprint. Entries refer to tags by name, e.g. the biomes a structure
+	 * can start in, so what each tag holds is hashed as well.
+	 */
+	private static long fingerprint(RegistryAccess registryAccess) {
+		RegistryOps<JsonElement> ops = registryAccess.createSerializationContext(JsonOps.INSTANCE);
+		Hasher hasher = Hashing.sha256().newHasher();
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.STRUCTURE), Structure.DIRECT_CODEC, ops);
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.STRUCTURE_SET), StructureSet.DIRECT_CODEC, ops);
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.TEMPLATE_POOL), StructureTemplatePool.DIRECT_CODEC, ops);
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.LEVEL_STEM), LevelStem.CODEC, ops);
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.NOISE_SETTINGS), NoiseGeneratorSettings.DIRECT_CODEC, ops);
+		hashRegistry(
+			hasher,
+			registryAccess.lookupOrThrow(Registries.MULTI_NOISE_BIOME_SOURCE_PARAMETER_LIST),
+			MultiNoiseBiomeSourceParameterList.DIRECT_CODEC,
+			ops
+		);
+		hashRegistry(hasher, registryAccess.lookupOrThrow(Registries.BIOME), Biome.DIRECT_CODEC, ops);
+		return hasher.hash().asLong();
+	}
+
+	private static <T> void hashRegistry(Hasher hasher, Registry<T> registry, Codec<T> codec, RegistryOps<JsonElement> ops) {
+		registry.listElements()
+			.sorted(Comparator.comparing(holder -> holder.key().location().toString()))
+			.forEach(holder -> {
+				hasher.putString(holder.key().location().toString(), StandardCharsets.UTF_8);
+				hasher.putString(
+					codec.encodeStart(ops, holder.value()).mapOrElse(JsonElement::toString, error -> error.message()),
+					StandardCharsets.UTF_8
+				);
+			});
+		registry.listTags()
+			.sorted(Comparator.comparing(tag -> tag.key().location().toString()))
+			.forEach(tag -> {
+				hasher.putString("#" + tag.key().location(), StandardCharsets.UTF_8);
+				hasher.putInt(tag.size());
+				tag.stream()
+					.map(holder -> holder.unwrapKey().map(key -> key.location().toString()).orElse(""))
+					.sorted()
+					.forEach(key -> hasher.putString(key, StandardCharsets.UTF_8));
+			});
+	}
+}
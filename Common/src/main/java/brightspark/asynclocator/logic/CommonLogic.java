@@ -7,26 +7,38 @@ import net.minecraft.core.component.DataComponents;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.BiomeTags;
+import net.minecraft.util.Mth;
 import net.minecraft.util.Unit;
-import net.minecraft.world.inventory.AbstractContainerMenu;
-import net.minecraft.world.inventory.ChestMenu;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.item.MapItem;
 import net.minecraft.world.item.component.CustomData;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.biome.Climate;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.entity.ChestBlockEntity;
+import net.minecraft.world.level.material.MapColor;
 import net.minecraft.world.level.saveddata.maps.MapDecorationType;
 import net.minecraft.world.level.saveddata.maps.MapId;
 import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.UUID;
 
 public class CommonLogic {
 	private static final String MAP_HOVER_NAME_KEY = "menu.working";
+	/*
+		A pending map has this one key in its custom data, holding the id of its job in PendingMapJobs, or
+		UNTRACKED for maps that don't have a job. Maps saved as pending before jobs existed have it as true, which reads
+		as UNTRACKED, along with a tracking UUID under LEGACY_UUID_TRACKER. Custom data is used rather than a data
+		component of our own so that pending maps can still be sent to clients without the mod.
+	 */
 	private static final String PENDING_MARKER = "asynclocator.pending";
-	private static final String UUID_TRACKER = PENDING_MARKER + ".uuid";
+	private static final String LEGACY_UUID_TRACKER = PENDING_MARKER + ".uuid";
+	private static final int UNTRACKED = 1;
+	public static final int NO_JOB_ID = 0;
+	private static final int MAP_SIZE = 128;
 
 	private CommonLogic() {}
 
@@ -35,64 +47,50 @@ public class CommonLogic {
 		ItemStack stack = new ItemStack(Items.FILLED_MAP);
 		stack.set(DataComponents.ITEM_NAME, Component.translatable(MAP_HOVER_NAME_KEY));
 		CompoundTag customData = new CompoundTag();
-		customData.putByte(PENDING_MARKER, (byte) 1);
-		stack.set(DataComponents.CUSTOM_DATA, CustomData.of(customData));
-		return stack;
-	}
-
-	public static ItemStack createManagedMap() {
-		ItemStack stack = new ItemStack(Items.FILLED_MAP);
-		stack.set(DataComponents.ITEM_NAME, Component.translatable(MAP_HOVER_NAME_KEY));
-		CompoundTag customData = new CompoundTag();
-		customData.putString(UUID_TRACKER, UUID.randomUUID().toString());
-		customData.putBoolean(PENDING_MARKER, true);
+		customData.putInt(PENDING_MARKER, UNTRACKED);
 		stack.set(DataComponents.CUSTOM_DATA, CustomData.of(customData));
 		return stack;
 	}
 
-	// This way it will render correctly in the GUI
-	public static ItemStack createMerchantMap(ServerLevel level) {
+	/*
+		Creates a pending map for a job in PendingMapJobs, which is how its result finds it again.
+		Pending maps all share the blank PlaceholderMap's id so they render correctly in the GUI, and don't get a map
+		of their own until finalizeMap has somewhere to point them, so offers and loot whose locate fails or that are
+		never taken don't leave map files behind.
+	 */
+	public static ItemStack createManagedMap(int jobId, @Nullable MapId placeholderId) {
 		ItemStack stack = new ItemStack(Items.FILLED_MAP);
-		
-		MapItemSavedData mapData = MapItemSavedData.createFresh(
-			0, 0, (byte) 2, true, true, level.dimension()
-		);
-		
-		MapId newMapId = level.getFreeMapId();
-		stack.set(DataComponents.MAP_ID, newMapId);
-		level.setMapData(newMapId, mapData);
-		
+		if (placeholderId != null) {
+			stack.set(DataComponents.MAP_ID, placeholderId);
+		}
 		stack.set(DataComponents.ITEM_NAME, Component.translatable(MAP_HOVER_NAME_KEY));
-		
 		CompoundTag customData = new CompoundTag();
-		customData.putBoolean(PENDING_MARKER, true);
+		customData.putInt(PENDING_MARKER, jobId);
 		stack.set(DataComponents.CUSTOM_DATA, CustomData.of(customData));
-		
 		return stack;
 	}
 
-	// Check if FILLED_MAP is pending
+	// Check if FILLED_MAP is pending. Runs on every slot pickup check, so it's a single lookup that doesn't allocate
 	public static boolean isEmptyPendingMap(ItemStack stack) {
 		if (!stack.is(Items.FILLED_MAP)) {
 			return false;
 		}
 		CustomData customData = stack.get(DataComponents.CUSTOM_DATA);
-		if (customData == null) return false;
-		return customData.contains(PENDING_MARKER) || customData.contains(UUID_TRACKER);
+		return customData != null && customData.contains(PENDING_MARKER);
 	}
 
-	// Retrieves the tracking UUID stoerd on a managed pending map
-	public static @Nullable java.util.UUID getTrackingUUID(ItemStack stack) {
+	// Reads the PendingMapJobs id of a pending map, without copying its custom data
+	@SuppressWarnings("deprecation")
+	public static int getJobId(ItemStack stack) {
 		CustomData customData = stack.get(DataComponents.CUSTOM_DATA);
-		if (customData == null) return null;
-		CompoundTag tag = customData.copyTag();
-		String raw = tag.getString(UUID_TRACKER).orElse("");
-		if (raw.isEmpty()) return null;
-		try {
-			return java.util.UUID.fromString(raw);
-		} catch (IllegalArgumentException ex) {
-			return null;
-		}
+		if (customData == null) return NO_JOB_ID;
+		int id = customData.getUnsafe().getIntOr(PENDING_MARKER, NO_JOB_ID);
+		return id == UNTRACKED ? NO_JOB_ID : id;
+	}
+
+	// Whether the id can be given to a job, as some are kept for pending maps without one
+	public static boolean isJobId(int id) {
+		return id != NO_JOB_ID && id != UNTRACKED;
 	}
 
 	public static void clearPendingState(ItemStack mapStack) {
@@ -100,7 +98,7 @@ public class CommonLogic {
 		if (currentData != null) {
 			CompoundTag newTag = currentData.copyTag();
 			newTag.remove(PENDING_MARKER);
-			newTag.remove(UUID_TRACKER);
+			newTag.remove(LEGACY_UUID_TRACKER);
 			if (newTag.isEmpty()) {
 				mapStack.remove(DataComponents.CUSTOM_DATA);
 			} else {
@@ -109,6 +107,94 @@ public class CommonLogic {
 		}
 	}
 	
+	/**
+	 * A found map destination, with the biome preview of a map centred on it if that could be rendered.
+	 */
+	public record FoundMap(BlockPos pos, @Nullable byte[] biomePreview) {}
+
+	// Renders the biome preview for the found position, meant to be called off the server thread once a locate finishes
+	public static @Nullable FoundMap prepareMap(ServerLevel level, @Nullable BlockPos pos, int scale) {
+		if (pos == null) {
+			return null;
+		}
+		try {
+			return new FoundMap(pos, renderBiomePreview(level, pos, scale));
+		} catch (Exception e) {
+			// finalizeMap renders it on the server thread instead
+			ALConstants.logError(e, "Failed to render biome preview for map at {}", pos);
+			return new FoundMap(pos, null);
+		}
+	}
+
+	/**
+	 * Renders the same colours as {@link MapItem#renderBiomePreviewMap} for a map centred on the position, without
+	 * touching any game state. Vanilla reads the biomes of loaded chunks, which can't be done off the server thread, so
+	 * they're sampled from the biome source instead - these only differ where a chunk's biomes were changed after it
+	 * was generated.
+	 */
+	public static byte[] renderBiomePreview(ServerLevel level, BlockPos pos, int scale) {
+		MapItemSavedData mapData = MapItemSavedData.createFresh(
+			pos.getX(), pos.getZ(), (byte) scale, false, false, level.dimension()
+		);
+		BiomeSource biomeSource = level.getChunkSource().getGenerator().getBiomeSource();
+		Climate.Sampler sampler = level.getChunkSource().randomState().sampler();
+		BiomeManager biomeManager = level.getBiomeManager()
+			.withDifferentSource((x, y, z) -> biomeSource.getNoiseBiome(x, y, z, sampler));
+
+		int blocksPerPixel = 1 << scale;
+		int minX = mapData.centerX / blocksPerPixel - MAP_SIZE / 2;
+		int minZ = mapData.centerZ / blocksPerPixel - MAP_SIZE / 2;
+		boolean[] watery = new boolean[MAP_SIZE * MAP_SIZE];
+		BlockPos.MutableBlockPos samplePos = new BlockPos.MutableBlockPos();
+		for (int z = 0; z < MAP_SIZE; z++) {
+			for (int x = 0; x < MAP_SIZE; x++) {
+				samplePos.set((minX + x) * blocksPerPixel, 0, (minZ + z) * blocksPerPixel);
+				watery[z * MAP_SIZE + x] = biomeManager.getBiome(samplePos).is(BiomeTags.WATER_ON_MAP_BORDERS);
+			}
+		}
+
+		byte[] colors = new byte[MAP_SIZE * MAP_SIZE];
+		for (int x = 1; x < MAP_SIZE - 1; x++) {
+			for (int z = 1; z < MAP_SIZE - 1; z++) {
+				int wateryNeighbours = 0;
+				for (int dx = -1; dx < 2; dx++) {
+					for (int dz = -1; dz < 2; dz++) {
+						if ((dx != 0 || dz != 0) && watery[(z + dz) * MAP_SIZE + x + dx]) {
+							wateryNeighbours++;
+						}
+					}
+				}
+
+				MapColor.Brightness brightness = MapColor.Brightness.LOWEST;
+				MapColor color = MapColor.NONE;
+				if (watery[z * MAP_SIZE + x]) {
+					color = MapColor.COLOR_ORANGE;
+					if (wateryNeighbours > 7 && z % 2 == 0) {
+						switch ((x + (int) (Mth.sin(z + 0.0F) * 7.0F)) / 8 % 5) {
+							case 0, 4 -> brightness = MapColor.Brightness.LOW;
+							case 1, 3 -> brightness = MapColor.Brightness.NORMAL;
+							case 2 -> brightness = MapColor.Brightness.HIGH;
+						}
+					} else if (wateryNeighbours > 7) {
+						color = MapColor.NONE;
+					} else if (wateryNeighbours > 5) {
+						brightness = MapColor.Brightness.NORMAL;
+					} else if (wateryNeighbours > 1) {
+						brightness = MapColor.Brightness.LOW;
+					}
+				} else if (wateryNeighbours > 0) {
+					color = MapColor.COLOR_BROWN;
+					brightness = wateryNeighbours > 3 ? MapColor.Brightness.NORMAL : MapColor.Brightness.LOWEST;
+				}
+
+				if (color != MapColor.NONE) {
+					colors[z * MAP_SIZE + x] = color.getPackedId(brightness);
+				}
+			}
+		}
+		return colors;
+	}
+
 	// Updates the data of the map
 	public static void finalizeMap(
 		ItemStack mapStack,
@@ -118,8 +204,25 @@ public class CommonLogic {
 		Holder<MapDecorationType> destinationType,
 		@Nullable Component displayName
 	) {
+		finalizeMap(mapStack, level, pos, scale, destinationType, displayName, null);
+	}
+
+	/**
+	 * Updates the data of the map, using the biome preview from {@link #prepareMap} if there is one rather than
+	 * rendering it here.
+	 */
+	public static void finalizeMap(
+		ItemStack mapStack,
+		ServerLevel level,
+		BlockPos pos,
+		int scale,
+		Holder<MapDecorationType> destinationType,
+		@Nullable Component displayName,
+		@Nullable byte[] biomePreview
+	) {
+		// Pending maps point at the shared placeholder, but ones made pending before that already have their own id
 		MapId existingId = mapStack.get(DataComponents.MAP_ID);
-		MapId mapId = existingId != null ? existingId : level.getFreeMapId();
+		MapId mapId = existingId != null && !PlaceholderMap.is(existingId) ? existingId : level.getFreeMapId();
 
 		// Create or replace map data with proper settings
 		MapItemSavedData mapData = MapItemSavedData.createFresh(
@@ -131,11 +234,16 @@ public class CommonLogic {
 			level.dimension()
 		);
 		level.setMapData(mapId, mapData);
-		if (existingId == null) {
+		if (mapId != existingId) {
 			mapStack.set(DataComponents.MAP_ID, mapId);
 		}
 		
-		MapItem.renderBiomePreviewMap(level, mapStack);
+		if (biomePreview != null) {
+			System.arraycopy(biomePreview, 0, mapData.colors, 0, mapData.colors.length);
+			mapData.setDirty();
+		} else {
+			MapItem.renderBiomePreviewMap(level, mapStack);
+		}
 		MapItemSavedData.addTargetDecoration(mapStack, pos, "+", destinationType);
 		
 		if (displayName != null) {
@@ -169,22 +277,12 @@ public class CommonLogic {
 		if (!(be instanceof ChestBlockEntity chestBE))
 			return;
 
-		level.players().forEach(player -> {
-			AbstractContainerMenu container = player.containerMenu;
-			if (container instanceof ChestMenu chestMenu && chestMenu.getContainer() == chestBE) {
-				chestMenu.broadcastChanges();
-			}
-		});
+		OpenContainerIndex.broadcastChanges(chestBE);
 	}
 
 	// This works with any container
 	public static void broadcastContainerChanges(ServerLevel level, BlockEntity be, net.minecraft.world.Container container) {
-		level.players().forEach(player -> {
-			AbstractContainerMenu menu = player.containerMenu;
-			// ChestMenu is used by both chests and barrels
-			if (menu instanceof ChestMenu chestMenu && chestMenu.getContainer() == container) {
-				chestMenu.broadcastChanges();
-			}
-		});
+		// ChestMenu is used by both chests and barrels
+		OpenContainerIndex.broadcastChanges(container);
 	}
 }
@@ -2,6 +2,8 @@ package brightspark.asynclocator.logic;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateQuotas;
 import net.minecraft.advancements.CriteriaTriggers;
 import net.minecraft.core.HolderSet;
 import net.minecraft.core.Registry;
@@ -35,6 +37,8 @@ public class EnderEyeItemLogic {
 				((EyeOfEnderData) eyeOfEnder).setLocateTaskOngoing(true);
 
 				var locateTask = AsyncLocator.locate(
+					LocateFeature.EYE_OF_ENDER,
+					LocateQuotas.sourceOf(player),
 					level,
 					holderSet,
 					player.blockPosition(),
@@ -51,8 +55,11 @@ public class EnderEyeItemLogic {
 						return;
 					}
 
-					if (throwable instanceof java.util.concurrent.TimeoutException) {
-						ALConstants.logWarn("EyeOfEnder locate timed out after {}s, dropping item and removing entity", timeoutSeconds);
+					if (throwable instanceof java.util.concurrent.TimeoutException || AsyncLocator.isRejected(throwable)) {
+						if (throwable instanceof java.util.concurrent.TimeoutException)
+							ALConstants.logWarn("EyeOfEnder locate timed out after {}s, dropping item and removing entity", timeoutSeconds);
+						else
+							ALConstants.logWarn("EyeOfEnder locate was rejected, dropping item and removing entity");
 						try { locateTask.cancel(); } catch (Throwable ignore) {}
 						net.minecraft.world.entity.item.ItemEntity drop = new net.minecraft.world.entity.item.ItemEntity(
 							level,
@@ -99,6 +106,8 @@ public class EnderEyeItemLogic {
 		// fallback
 		((EyeOfEnderData) eyeOfEnder).setLocateTaskOngoing(true);
 		var locateTask = AsyncLocator.locate(
+			LocateFeature.EYE_OF_ENDER,
+			LocateQuotas.sourceOf(player),
 			level,
 			StructureTags.EYE_OF_ENDER_LOCATED,
 			player.blockPosition(),
@@ -115,8 +124,11 @@ public class EnderEyeItemLogic {
 				return;
 			}
 
-			if (throwable instanceof java.util.concurrent.TimeoutException) {
-				ALConstants.logWarn("EyeOfEnder locate timed out after {}s, dropping item and removing entity", timeoutSeconds);
+			if (throwable instanceof java.util.concurrent.TimeoutException || AsyncLocator.isRejected(throwable)) {
+				if (throwable instanceof java.util.concurrent.TimeoutException)
+					ALConstants.logWarn("EyeOfEnder locate timed out after {}s, dropping item and removing entity", timeoutSeconds);
+				else
+					ALConstants.logWarn("EyeOfEnder locate was rejected, dropping item and removing entity");
 				try { locateTask.cancel(); } catch (Throwable ignore) {}
 				net.minecraft.world.entity.item.ItemEntity drop = new net.minecraft.world.entity.item.ItemEntity(
 					level,
@@ -2,6 +2,10 @@ package brightspark.asynclocator.logic;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateProgress;
+import brightspark.asynclocator.locate.LocateQuotaExceededException;
+import brightspark.asynclocator.locate.LocateQuotas;
 import brightspark.asynclocator.mixins.LocateCommandAccess;
 import brightspark.asynclocator.platform.Services;
 import com.google.common.base.Stopwatch;
@@ -19,11 +23,33 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.levelgen.structure.Structure;
 
+import java.util.concurrent.RejectedExecutionException;
+
 public class LocateCommandLogic {
 	private static final int BIOME_SAMPLE_RESOLUTION_HORIZONTAL = 32;
 	private static final int BIOME_SAMPLE_RESOLUTION_VERTICAL = 64;
 	private LocateCommandLogic() {}
 
+	// Commands fail fast when they can't be run right now, as the sender can just run it again
+	private static void sendTryAgain(CommandSourceStack sourceStack, RejectedExecutionException rejection) {
+		if (rejection instanceof LocateQuotaExceededException quotaExceeded) {
+			ALConstants.logDebug("Command source is over the locate quota - asking it to try again");
+			sourceStack.sendFailure(Component.literal(
+				"You're locating too often, please try again in " + quotaExceeded.retryAfterSeconds() + "s"
+			));
+		} else {
+			ALConstants.logDebug("Locating queue is full - asking command source to try again");
+			sourceStack.sendFailure(Component.literal("The server is busy locating other things, please try again in a moment"));
+		}
+	}
+
+	// Lets the sender know a long search is still going, and that there's nothing closer than it's got to
+	private static void sendProgress(CommandSourceStack sourceStack, String target, LocateProgress.Stage stage, String unit) {
+		sourceStack.sendSuccess(() -> Component.literal(
+			"Still locating " + target + " - nothing within " + stage.radius() + " of " + stage.maxRadius() + " " + unit
+		), false);
+	}
+
 	// Async structure locating for /locate structure
 	public static void locateAsync(
 		CommandSourceStack sourceStack,
@@ -32,7 +58,7 @@ public class LocateCommandLogic {
 	) {
 		BlockPos originPos = BlockPos.containing(sourceStack.getPosition());
 		Stopwatch stopwatch = Stopwatch.createStarted(Util.TICKER);
-		AsyncLocator.locate(sourceStack.getLevel(), holderset, originPos, 100, false)
+		AsyncLocator.locate(LocateFeature.LOCATE_COMMAND, LocateQuotas.sourceOf(sourceStack), sourceStack.getLevel(), holderset, originPos, 100, false)
 			.thenOnServerThread(pair -> {
 				stopwatch.stop();
 				if (pair != null) {
@@ -52,7 +78,8 @@ public class LocateCommandLogic {
 						LocateCommandAccess.getErrorFailed().create(structureResult.asPrintable()).getMessage()
 					));
 				}
-			});
+			}, rejection -> sendTryAgain(sourceStack, rejection))
+			.onProgressOnServerThread(stage -> sendProgress(sourceStack, structureResult.asPrintable(), stage, "rings"));
 	}
 
 	// Async biome locating for /locate biome
@@ -65,6 +92,8 @@ public class LocateCommandLogic {
 		int radius = Services.CONFIG.biomeSearchRadius();
 
 		AsyncLocator.locateBiome(
+			LocateFeature.LOCATE_BIOME_COMMAND,
+			LocateQuotas.sourceOf(sourceStack),
 			(ServerLevel) sourceStack.getLevel(),
 			biomeResult,
 			originPos,
@@ -90,6 +119,7 @@ public class LocateCommandLogic {
 					LocateCommandAccess.getErrorBiomeNotFound().create(biomeResult.asPrintable()).getMessage()
 				));
 			}
-		});
+		}, rejection -> sendTryAgain(sourceStack, rejection))
+			.onProgressOnServerThread(stage -> sendProgress(sourceStack, biomeResult.asPrintable(), stage, "blocks"));
 	}
 }
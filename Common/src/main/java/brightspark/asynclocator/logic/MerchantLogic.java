@@ -1,20 +1,21 @@
 package brightspark.asynclocator.logic;
 
 import brightspark.asynclocator.ALConstants;
-import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.AsyncLocator.LocateTask;
+import brightspark.asynclocator.locate.LocateBatcher;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateQuotaExceededException;
+import brightspark.asynclocator.locate.LocateQuotas;
 import brightspark.asynclocator.mixins.MerchantOfferAccess;
 import brightspark.asynclocator.platform.Services;
-import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.HolderSet;
 import net.minecraft.core.component.DataComponents;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.tags.TagKey;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.npc.AbstractVillager;
-import net.minecraft.world.entity.npc.Villager;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.item.trading.ItemCost;
@@ -24,24 +25,25 @@ import net.minecraft.world.level.saveddata.maps.MapDecorationType;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class MerchantLogic {
+	// How long to wait before trying again when the locating queue was full
+	private static final long QUEUE_FULL_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
 	private MerchantLogic() {}
 
 
-	public static void invalidateMap(AbstractVillager merchant, ItemStack mapStack) {
-		mapStack.set(DataComponents.ITEM_NAME, Component.translatable("item.minecraft.map"));
+	public static void invalidateMap(AbstractVillager merchant, PendingMapJobs.Job job) {
+		MerchantOffer offer = job.findOffer(merchant.getOffers());
+		ItemStack mapStack = offer != null ? offer.getResult() : job.stack();
 		mapStack.set(DataComponents.ITEM_NAME, Component.translatable("item.minecraft.map"));
 		CommonLogic.clearPendingState(mapStack);
 
-		merchant.getOffers()
-			.stream()
-			.filter(offer -> offer.getResult() == mapStack)
-			.findFirst()
-			.ifPresentOrElse(
-				offer -> removeOffer(merchant, offer),
-				() -> ALConstants.logWarn("Failed to find merchant offer for map stack instance used in invalidateMap")
-			);
+		if (offer != null) removeOffer(merchant, offer);
+		else ALConstants.logWarn("Failed to find merchant offer for pending map job {} used in invalidateMap", job.id());
 	}
 
 	public static void removeOffer(AbstractVillager merchant, MerchantOffer offer) {
@@ -58,33 +60,71 @@ public class MerchantLogic {
 	public static void handleLocationFound(
 		ServerLevel level,
 		AbstractVillager merchant,
-		ItemStack mapStack,
+		PendingMapJobs.Job job,
 		@Nullable String displayNameKey,
 		Holder<MapDecorationType> destinationTypeHolder,
-		@Nullable BlockPos pos
+		@Nullable CommonLogic.FoundMap found
 	) {
-		if (pos == null) {
+		PendingMapJobs.remove(job);
+		if (found == null) {
 			ALConstants.logInfo("No location found - invalidating merchant offer");
-			invalidateMap(merchant, mapStack);
+			job.setState(PendingMapJobs.State.NOT_FOUND);
+			invalidateMap(merchant, job);
 		} else {
-			ALConstants.logInfo("Location found at {} - updating treasure map in merchant offer", pos);
+			ALConstants.logInfo("Location found at {} - updating treasure map in merchant offer", found.pos());
+			job.setState(PendingMapJobs.State.FOUND);
+			MerchantOffer offer = job.findOffer(merchant.getOffers());
+			ItemStack mapStack = offer != null ? offer.getResult() : job.stack();
 			Component nameComponent = (displayNameKey == null || displayNameKey.isEmpty()) ? null : Component.translatable(displayNameKey);
-			CommonLogic.finalizeMap(mapStack, level, pos, 2, destinationTypeHolder, nameComponent);
+			CommonLogic.finalizeMap(mapStack, level, found.pos(), 2, destinationTypeHolder, nameComponent, found.biomePreview());
 		}
 
-		if (merchant.getTradingPlayer() instanceof ServerPlayer tradingPlayer) {
-			ALConstants.logInfo("Player {} currently trading - updating merchant offers", tradingPlayer);
-
-			int villagerLevel = merchant instanceof Villager villager ? villager.getVillagerData().level() : 1;
-			tradingPlayer.sendMerchantOffers(
-				tradingPlayer.containerMenu.containerId,
-				merchant.getOffers(),
-				villagerLevel,
-				merchant.getVillagerXp(),
-				merchant.showProgressBar(),
-				merchant.canRestock()
-			);
-		}
+		// Sent once at the end of the tick, however many of the merchant's maps finish in it
+		MerchantResync.markDirty(merchant);
+	}
+
+	/*
+	 * A rejected locate never searched anything, so the offer is kept and the locate is tried again once the quota has
+	 * refilled or the queue has had time to drain. Retries stop once the job's been dropped, or the merchant's gone.
+	 */
+	private static void handleLocateRejected(
+		ServerLevel level,
+		AbstractVillager merchant,
+		PendingMapJobs.Job job,
+		@Nullable String displayNameKey,
+		Holder<MapDecorationType> destinationTypeHolder,
+		MapLocateTask task,
+		RejectedExecutionException rejection
+	) {
+		long retryNanos = rejection instanceof LocateQuotaExceededException quotaExceeded
+			? quotaExceeded.retryAfterNanos()
+			: QUEUE_FULL_RETRY_NANOS;
+		ALConstants.logDebug(
+			"Locate for merchant map job {} was rejected - trying again in {}ms",
+			job.id(), TimeUnit.NANOSECONDS.toMillis(retryNanos)
+		);
+		CompletableFuture.delayedExecutor(retryNanos, TimeUnit.NANOSECONDS).execute(() -> level.getServer().execute(() -> {
+			if (merchant.isRemoved() || !PendingMapJobs.isPending(job)) {
+				ALConstants.logDebug("Not retrying locate for merchant map job {} as it's no longer pending", job.id());
+				return;
+			}
+			startLocate(level, merchant, job, displayNameKey, destinationTypeHolder, task);
+		}));
+	}
+
+	private static void startLocate(
+		ServerLevel level,
+		AbstractVillager merchant,
+		PendingMapJobs.Job job,
+		@Nullable String displayNameKey,
+		Holder<MapDecorationType> destinationTypeHolder,
+		MapLocateTask task
+	) {
+		LocateTask<CommonLogic.FoundMap> locateTask = task.locate(level, merchant).thenOnServerThread(
+			found -> handleLocationFound(level, merchant, job, displayNameKey, destinationTypeHolder, found),
+			rejection -> handleLocateRejected(level, merchant, job, displayNameKey, destinationTypeHolder, task, rejection)
+		);
+		job.track(locateTask.completableFuture());
 	}
 
 	public static MerchantOffer updateMapAsync(
@@ -99,17 +139,12 @@ public class MerchantLogic {
 		return updateMapAsyncInternal(
 			pTrader,
 			emeraldCost,
+			displayNameKey,
+			destinationTypeHolder,
 			maxUses,
 			villagerXp,
-			(level, merchant, mapStack) -> AsyncLocator.locate(level, destination, merchant.blockPosition(), 100, true)
-				.thenOnServerThread(pos -> handleLocationFound(
-					level,
-					merchant,
-					mapStack,
-					displayNameKey,
-					destinationTypeHolder,
-					pos
-				))
+			(level, merchant) -> LocateBatcher.locate(LocateFeature.VILLAGER_TRADE, quotaSource(merchant), level, destination, merchant.blockPosition(), 100, true)
+				.thenApplyOffThread(pos -> CommonLogic.prepareMap(level, pos, 2))
 		);
 	}
 
@@ -125,35 +160,33 @@ public class MerchantLogic {
 		return updateMapAsyncInternal(
 			pTrader,
 			emeraldCost,
+			displayNameKey,
+			destinationTypeHolder,
 			maxUses,
 			villagerXp,
-			(level, merchant, mapStack) -> AsyncLocator.locate(level, structureSet, merchant.blockPosition(), 100, true)
-				.thenOnServerThread(pair -> {
-					BlockPos pos = pair != null ? pair.getFirst() : null;
-					handleLocationFound(
-					level,
-					merchant,
-					mapStack,
-						displayNameKey,
-						destinationTypeHolder,
-						pos
-					);
-				})
+			(level, merchant) -> LocateBatcher.locate(LocateFeature.VILLAGER_TRADE, quotaSource(merchant), level, structureSet, merchant.blockPosition(), 100, true)
+				.thenApplyOffThread(pair -> CommonLogic.prepareMap(level, pair != null ? pair.getFirst() : null, 2))
 		);
 	}
 
 	private static MerchantOffer updateMapAsyncInternal(
-		Entity trader, int emeraldCost, int maxUses, int villagerXp, MapUpdateTask task
+		Entity trader,
+		int emeraldCost,
+		@Nullable String displayNameKey,
+		Holder<MapDecorationType> destinationTypeHolder,
+		int maxUses,
+		int villagerXp,
+		MapLocateTask task
 	) {
         if (trader instanceof AbstractVillager merchant && trader.level() instanceof ServerLevel serverLevel) {
-            // Use specialized method for merchant maps that creates proper MapId immediately
-            ItemStack mapStack = CommonLogic.createMerchantMap(serverLevel);
-            ALConstants.logDebug("Created merchant map with MapId {} for offer", mapStack.get(DataComponents.MAP_ID));
+            // The map gets its own MapId once a location is found
+            PendingMapJobs.Job job = PendingMapJobs.create(serverLevel, null, merchant);
+            ItemStack mapStack = job.stack();
+            ALConstants.logDebug("Created pending merchant map for offer with job {}", job.id());
 
-            // Start async task with the properly initialized map
-            task.apply(serverLevel, merchant, mapStack);
+            startLocate(serverLevel, merchant, job, displayNameKey, destinationTypeHolder, task);
 
-            // Create the offdr with the map that has a valid ID
+            // Create the offer with the pending map
             ItemCost emeraldItemCost = new ItemCost(Items.EMERALD, emeraldCost);
             Optional<ItemCost> compassCost = Optional.of(new ItemCost(Items.COMPASS));
 			return new MerchantOffer(
@@ -173,7 +206,13 @@ public class MerchantLogic {
 		}
 	}
 
-	public interface MapUpdateTask {
-		void apply(ServerLevel level, AbstractVillager merchant, ItemStack mapStack);
+	// Quotas go to the player trading if there is one, otherwise to the merchant itself
+	private static String quotaSource(AbstractVillager merchant) {
+		Entity tradingPlayer = merchant.getTradingPlayer();
+		return LocateQuotas.sourceOf(tradingPlayer != null ? tradingPlayer : merchant);
+	}
+
+	public interface MapLocateTask {
+		LocateTask<CommonLogic.FoundMap> locate(ServerLevel level, AbstractVillager merchant);
 	}
 }
@@ -0,0 +1,65 @@
+package brightspark.asynclocator.logic;
+
+import brightspark.asynclocator.ALConstants;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.npc.AbstractVillager;
+import net.minecraft.world.entity.npc.Villager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merchants whose offers have changed this tick, so the player trading with each is sent its offers once at the end
+ * of the tick rather than once for every map that finished.
+ */
+public class MerchantResync {
+	// Guarded by itself. Mapped to themselves as there's no identity set
+	private static final Map<AbstractVillager, AbstractVillager> DIRTY = new IdentityHashMap<>();
+
+	private MerchantResync() {}
+
+	/**
+	 * Marks the merchant's offers as changed, to be sent to whoever is trading with it at the end of the tick.
+	 */
+	public static void markDirty(AbstractVillager merchant) {
+		synchronized (DIRTY) {
+			DIRTY.put(merchant, merchant);
+		}
+	}
+
+	/**
+	 * Sends the offers of every merchant marked this tick. Called at the end of each server tick.
+	 */
+	public static void flush() {
+		List<AbstractVillager> merchants;
+		synchronized (DIRTY) {
+			if (DIRTY.isEmpty()) {
+				return;
+			}
+			merchants = new ArrayList<>(DIRTY.keySet());
+			DIRTY.clear();
+		}
+		for (AbstractVillager merchant : merchants) {
+			if (merchant.getTradingPlayer() instanceof ServerPlayer tradingPlayer) {
+				ALConstants.logDebug("Player {} currently trading - updating merchant offers", tradingPlayer);
+				int villagerLevel = merchant instanceof Villager villager ? villager.getVillagerData().level() : 1;
+				tradingPlayer.sendMerchantOffers(
+					tradingPlayer.containerMenu.containerId,
+					merchant.getOffers(),
+					villagerLevel,
+					merchant.getVillagerXp(),
+					merchant.showProgressBar(),
+					merchant.canRestock()
+				);
+			}
+		}
+	}
+
+	public static void clear() {
+		synchronized (DIRTY) {
+			DIRTY.clear();
+		}
+	}
+}
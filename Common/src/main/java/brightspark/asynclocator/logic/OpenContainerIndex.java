@@ -0,0 +1,59 @@
+package brightspark.asynclocator.logic;
+
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.ChestMenu;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the chest menus players have open on the server, by the container they're showing, so changes made to a
+ * container can be sent to just the players looking at it rather than checking every player in the level.
+ * <p>
+ * Menus are added when they're made and removed when they're closed, and the index is cleared when the server stops so
+ * it doesn't keep players and menus from an old world. Only used from the server thread.
+ */
+public class OpenContainerIndex {
+	private static final Map<Container, List<Viewer>> VIEWERS = new IdentityHashMap<>();
+
+	private OpenContainerIndex() {}
+
+	public static void onOpened(ChestMenu menu, Player player) {
+		VIEWERS.computeIfAbsent(menu.getContainer(), c -> new ArrayList<>(1)).add(new Viewer(player, menu));
+	}
+
+	public static void onClosed(ChestMenu menu) {
+		List<Viewer> viewers = VIEWERS.get(menu.getContainer());
+		if (viewers != null) {
+			viewers.removeIf(viewer -> viewer.menu == menu);
+			if (viewers.isEmpty()) {
+				VIEWERS.remove(menu.getContainer());
+			}
+		}
+	}
+
+	/**
+	 * Sends changes in the container to the players that have it open.
+	 */
+	public static void broadcastChanges(Container container) {
+		List<Viewer> viewers = VIEWERS.get(container);
+		if (viewers == null) {
+			return;
+		}
+		// Copied as broadcasting can close menus
+		for (Viewer viewer : List.copyOf(viewers)) {
+			if (viewer.player.containerMenu == viewer.menu) {
+				viewer.menu.broadcastChanges();
+			}
+		}
+	}
+
+	public static void clear() {
+		VIEWERS.clear();
+	}
+
+	private record Viewer(Player player, ChestMenu menu) {}
+}
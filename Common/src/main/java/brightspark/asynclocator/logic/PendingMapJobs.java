@@ -0,0 +1,293 @@
+package brightspark.asynclocator.logic;
+
+import brightspark.asynclocator.ALConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.trading.MerchantOffer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Server side registry of the maps waiting on a locate, so a result can go straight to its map rather than searching
+ * for it by something stored on the stack.
+ * <p>
+ * Each pending map carries only its job's id, and the job keeps the stack itself along with where it went - the
+ * container and slot it was put in, or the merchant it's being sold by - and the name loot gave it. The stack is found
+ * again by instance, and by id if it's been copied since, starting from the slot it was put in. Jobs are removed once
+ * their result has been applied. A job is never dropped while its search is still going, as that would leave its map
+ * to be invalidated as an orphan, but one whose search finished without its result being applied is dropped
+ * {@link #EXPIRY_MINUTES} later.
+ * <p>
+ * Jobs only live in memory, so a pending map saved before a restart, or whose job was dropped, has nothing left to
+ * finish it. Those are turned into empty maps when they're found, see {@link #isOrphaned}.
+ * <p>
+ * Jobs are made and used on the server thread, but the registry is locked as it's cleared when the executor shuts down.
+ */
+public class PendingMapJobs {
+	// How long after its search finished a job waits for its result to be applied
+	private static final long EXPIRY_MINUTES = 5;
+	private static final long EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(EXPIRY_MINUTES);
+
+	// In the order they were made
+	private static final Map<Integer, Job> JOBS = new LinkedHashMap<>();
+	// Jobs for containers made since loot was last put in one, as the slot is only known once it has been
+	private static final List<Job> UNPLACED = new ArrayList<>();
+	// Starts somewhere random so maps left pending from before a restart are unlikely to match a new job
+	private static int nextId = ThreadLocalRandom.current().nextInt();
+
+	private PendingMapJobs() {}
+
+	/**
+	 * Makes a pending map for a new job.
+	 *
+	 * @param level The level the map is being made in
+	 * @param containerPos Where the container the map is going in is, if it's loot for one
+	 * @param entity The entity the map is for, such as the merchant selling it
+	 */
+	public static synchronized Job create(ServerLevel level, @Nullable BlockPos containerPos, @Nullable Entity entity) {
+		expire();
+		int id;
+		do {
+			id = nextId++;
+		} while (!CommonLogic.isJobId(id) || JOBS.containsKey(id));
+		Job job = new Job(
+			id, CommonLogic.createManagedMap(id, PlaceholderMap.get(level.getServer())), containerPos, entity
+		);
+		JOBS.put(id, job);
+		if (containerPos != null) {
+			UNPLACED.add(job);
+		}
+		return job;
+	}
+
+	/**
+	 * Gets the job of the pending map, or null if it doesn't have one.
+	 */
+	public static synchronized @Nullable Job get(ItemStack stack) {
+		int id = CommonLogic.getJobId(stack);
+		return id == CommonLogic.NO_JOB_ID ? null : JOBS.get(id);
+	}
+
+	/**
+	 * Whether the job is still waiting on its result, rather than having been removed or dropped.
+	 */
+	public static synchronized boolean isPending(Job job) {
+		return JOBS.get(job.id) == job;
+	}
+
+	/**
+	 * Whether the stack is a pending map without a job, so nothing will ever finish it.
+	 */
+	public static boolean isOrphaned(ItemStack stack) {
+		return CommonLogic.isEmptyPendingMap(stack) && get(stack) == null;
+	}
+
+	/**
+	 * Turns every pending map in the container that doesn't have a job into an empty map.
+	 */
+	public static void invalidateOrphans(Container container) {
+		for (int slot = 0; slot < container.getContainerSize(); slot++) {
+			if (isOrphaned(container.getItem(slot))) {
+				ALConstants.logDebug("Invalidating pending map without a job in container slot {}", slot);
+				container.setItem(slot, new ItemStack(Items.MAP));
+			}
+		}
+	}
+
+	/**
+	 * Removes the job, once its result is being applied.
+	 */
+	public static synchronized void remove(Job job) {
+		JOBS.remove(job.id, job);
+		UNPLACED.remove(job);
+	}
+
+	/**
+	 * Called after loot has been put into a container, to note which slot each new pending map went in.
+	 */
+	public static synchronized void onContainerFilled(Container container) {
+		if (UNPLACED.isEmpty()) {
+			return;
+		}
+		for (Job job : UNPLACED) {
+			for (int slot = 0; slot < container.getContainerSize(); slot++) {
+				if (container.getItem(slot) == job.stack) {
+					job.slotHint = slot;
+					break;
+				}
+			}
+		}
+		UNPLACED.clear();
+	}
+
+	/**
+	 * Called at the end of each server tick. Loot for a container is put in it in the same tick it's rolled.
+	 */
+	public static synchronized void onTickEnd() {
+		UNPLACED.clear();
+		expire();
+	}
+
+	public static synchronized int size() {
+		return JOBS.size();
+	}
+
+	public static synchronized void clear() {
+		JOBS.clear();
+		UNPLACED.clear();
+	}
+
+	private static void expire() {
+		long now = System.nanoTime();
+		Iterator<Job> iterator = JOBS.values().iterator();
+		while (iterator.hasNext()) {
+			Job job = iterator.next();
+			if (now - job.createdNanos < EXPIRY_NANOS) {
+				// Nothing made after this one can have been waiting long enough either
+				break;
+			}
+			if (job.isExpired(now)) {
+				ALConstants.logDebug("Dropping pending map job {} as its result was never applied", job.id);
+				iterator.remove();
+				UNPLACED.remove(job);
+			}
+		}
+	}
+
+	public enum State {
+		LOCATING,
+		FOUND,
+		NOT_FOUND
+	}
+
+	public static final class Job {
+		private final int id;
+		private final ItemStack stack;
+		private final @Nullable BlockPos containerPos;
+		private final @Nullable Entity entity;
+		private final long createdNanos = System.nanoTime();
+		private volatile @Nullable CompletableFuture<?> task;
+		// When the task finished, or 0 if it hasn't yet
+		private volatile long finishedNanos;
+		private int slotHint = -1;
+		private @Nullable Component name;
+		private State state = State.LOCATING;
+
+		private Job(int id, ItemStack stack, @Nullable BlockPos containerPos, @Nullable Entity entity) {
+			this.id = id;
+			this.stack = stack;
+			this.containerPos = containerPos;
+			this.entity = entity;
+		}
+
+		public int id() {
+			return id;
+		}
+
+		/**
+		 * Sets the future of the search for this job's map, which keeps the job from expiring until it's finished. A
+		 * search that's tried again replaces the one before it.
+		 */
+		public void track(CompletableFuture<?> task) {
+			this.task = task;
+			finishedNanos = 0;
+			task.whenComplete((ignored, ignoredThrowable) -> {
+				if (this.task == task) {
+					finishedNanos = System.nanoTime();
+				}
+			});
+		}
+
+		// Jobs without a search yet expire by age, as there's nothing else to go by
+		private boolean isExpired(long now) {
+			if (task == null) {
+				return now - createdNanos >= EXPIRY_NANOS;
+			}
+			long finished = finishedNanos;
+			return finished != 0 && now - finished >= EXPIRY_NANOS;
+		}
+
+		/**
+		 * The pending map as it was made. It may have been copied since, so use {@link #findSlot} or
+		 * {@link #findOffer} to get the one to update.
+		 */
+		public ItemStack stack() {
+			return stack;
+		}
+
+		public @Nullable BlockPos containerPos() {
+			return containerPos;
+		}
+
+		public @Nullable Entity entity() {
+			return entity;
+		}
+
+		/**
+		 * The name loot gave the map, which is held back until the map is finalized.
+		 */
+		public @Nullable Component name() {
+			return name;
+		}
+
+		public void setName(@Nullable Component name) {
+			this.name = name;
+		}
+
+		public State state() {
+			return state;
+		}
+
+		public void setState(State state) {
+			this.state = state;
+		}
+
+		/**
+		 * Whether the stack is this job's map.
+		 */
+		public boolean matches(ItemStack other) {
+			return other == stack || CommonLogic.getJobId(other) == id;
+		}
+
+		/**
+		 * Finds the slot this job's map is in, trying the slot it was put in first, or returns -1 if it's not there.
+		 */
+		public int findSlot(int slots, IntFunction<ItemStack> getItem) {
+			if (slotHint >= 0 && slotHint < slots && matches(getItem.apply(slotHint))) {
+				return slotHint;
+			}
+			for (int slot = 0; slot < slots; slot++) {
+				if (slot != slotHint && matches(getItem.apply(slot))) {
+					return slotHint = slot;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Finds the offer selling this job's map, or returns null if there isn't one.
+		 */
+		public @Nullable MerchantOffer findOffer(List<MerchantOffer> offers) {
+			for (MerchantOffer offer : offers) {
+				if (matches(offer.getResult())) {
+					return offer;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package brightspark.asynclocator.logic;
+
+import brightspark.asynclocator.ALConstants;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.saveddata.maps.MapId;
+import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
+import net.minecraft.world.level.storage.LevelResource;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The blank map every pending map points at until it's finalized, so pending maps have a map id and render as maps
+ * without each one taking an id and map data of its own.
+ * <p>
+ * It's locked so it never draws anything, and its id is kept in the asynclocator folder of the world so the same map is
+ * used again after a restart.
+ */
+public class PlaceholderMap {
+	private static final String FILE_NAME = "placeholder_map";
+
+	// Guarded by PlaceholderMap.class
+	private static MinecraftServer SERVER = null;
+	private static MapId ID = null;
+
+	private PlaceholderMap() {}
+
+	/**
+	 * Gets the id of the server's placeholder map, making the map if it doesn't have one yet.
+	 */
+	public static synchronized MapId get(MinecraftServer server) {
+		if (SERVER != server) {
+			SERVER = server;
+			ID = load(server);
+		}
+		return ID;
+	}
+
+	/**
+	 * Whether the id is that of the current placeholder map.
+	 */
+	public static synchronized boolean is(@Nullable MapId mapId) {
+		return mapId != null && mapId.equals(ID);
+	}
+
+	public static synchronized void clear() {
+		SERVER = null;
+		ID = null;
+	}
+
+	private static MapId load(MinecraftServer server) {
+		ServerLevel overworld = server.overworld();
+		Path file = server.getWorldPath(LevelResource.ROOT).resolve(ALConstants.MOD_ID).resolve(FILE_NAME);
+		if (Files.exists(file)) {
+			try {
+				MapId id = new MapId(Integer.parseInt(Files.readString(file, StandardCharsets.UTF_8).trim()));
+				MapItemSavedData data = overworld.getMapData(id);
+				if (data != null && data.locked) {
+					return id;
+				}
+				ALConstants.logWarn("Placeholder map {} no longer exists - making a new one", id.id());
+			} catch (IOException | NumberFormatException e) {
+				ALConstants.logError(e, "Failed to read placeholder map id - making a new one");
+			}
+		}
+
+		MapId id = overworld.getFreeMapId();
+		overworld.setMapData(id, MapItemSavedData.createFresh(0, 0, (byte) 0, false, false, Level.OVERWORLD).locked());
+		try {
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, Integer.toString(id.id()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			ALConstants.logError(e, "Failed to save placeholder map id - a new one will be made after a restart");
+		}
+		ALConstants.logDebug("Made placeholder map {}", id.id());
+		return id;
+	}
+}
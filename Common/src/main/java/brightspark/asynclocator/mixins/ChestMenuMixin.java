@@ -0,0 +1,42 @@
+package brightspark.asynclocator.mixins;
+
+import brightspark.asynclocator.logic.OpenContainerIndex;
+import brightspark.asynclocator.logic.PendingMapJobs;
+import brightspark.asynclocator.platform.Services;
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.ChestMenu;
+import net.minecraft.world.inventory.MenuType;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ChestMenu.class)
+public class ChestMenuMixin {
+	/*
+		Keeps the open container index up to date, so finished maps only update the menus showing their container.
+		Client side menus only show a copy of the container, so they're left out.
+		Pending maps left in the container without a job, e.g. from before a restart, are cleared up as it's opened.
+	 */
+	@Inject(
+		method = "<init>(Lnet/minecraft/world/inventory/MenuType;ILnet/minecraft/world/entity/player/Inventory;Lnet/minecraft/world/Container;I)V",
+		at = @At("RETURN")
+	)
+	public void indexOpenedMenu(MenuType<?> type, int containerId, Inventory playerInventory, Container container, int rows, CallbackInfo ci) {
+		if (!playerInventory.player.level().isClientSide()) {
+			OpenContainerIndex.onOpened((ChestMenu) (Object) this, playerInventory.player);
+			if (Services.CONFIG.explorationMapEnabled()) {
+				PendingMapJobs.invalidateOrphans(container);
+			}
+		}
+	}
+
+	@Inject(method = "removed", at = @At("TAIL"))
+	public void unindexClosedMenu(Player player, CallbackInfo ci) {
+		if (!player.level().isClientSide()) {
+			OpenContainerIndex.onClosed((ChestMenu) (Object) this);
+		}
+	}
+}
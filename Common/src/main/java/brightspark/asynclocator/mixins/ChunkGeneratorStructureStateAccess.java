@@ -0,0 +1,17 @@
+package brightspark.asynclocator.mixins;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Mixin(ChunkGeneratorStructureState.class)
+public interface ChunkGeneratorStructureStateAccess {
+	@Accessor("ringPositions")
+	Map<ConcentricRingsStructurePlacement, CompletableFuture<List<ChunkPos>>> asynclocator$getRingPositions();
+}
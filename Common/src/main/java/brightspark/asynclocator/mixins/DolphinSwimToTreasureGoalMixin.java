@@ -3,6 +3,8 @@ package brightspark.asynclocator.mixins;
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.AsyncLocator;
 import brightspark.asynclocator.AsyncLocator.LocateTask;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateQuotas;
 import brightspark.asynclocator.platform.Services;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
@@ -88,7 +90,7 @@ private void handleFindTreasureAsync(ServerLevel level, BlockPos origin) {
 			if (holderSetOpt.isPresent()) {
 				HolderSet<Structure> set = holderSetOpt.get();
 				locateTask = AsyncLocator
-						.locate(level, set, origin, 50, false)
+						.locate(LocateFeature.DOLPHIN_TREASURE, LocateQuotas.sourceOf(dolphin), level, set, origin, 50, false)
 						.thenOnServerThread(pair -> handleLocationFound(level, pair == null ? null : pair.getFirst()));
 				return;
 			} else {
@@ -99,7 +101,7 @@ private void handleFindTreasureAsync(ServerLevel level, BlockPos origin) {
 		}
 
 		locateTask = AsyncLocator
-				.locate(level, StructureTags.DOLPHIN_LOCATED, origin, 50, false)
+				.locate(LocateFeature.DOLPHIN_TREASURE, LocateQuotas.sourceOf(dolphin), level, StructureTags.DOLPHIN_LOCATED, origin, 50, false)
 				.thenOnServerThread(pos -> handleLocationFound(level, pos));
 	}
 
@@ -1,31 +1,33 @@
 package brightspark.asynclocator.mixins;
 
 import brightspark.asynclocator.ALConstants;
-import brightspark.asynclocator.AsyncLocator;
+import brightspark.asynclocator.AsyncLocator.LocateTask;
+import brightspark.asynclocator.locate.LocateBatcher;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.LocateQuotas;
 import brightspark.asynclocator.logic.CommonLogic;
-import brightspark.asynclocator.logic.ExplorationMapFunctionLogic;
+import brightspark.asynclocator.logic.MerchantResync;
+import brightspark.asynclocator.logic.PendingMapJobs;
 import brightspark.asynclocator.platform.Services;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
-import net.minecraft.core.component.DataComponents;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.npc.AbstractVillager;
-import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.world.entity.npc.Villager;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.MapItem;
+import net.minecraft.world.item.trading.MerchantOffer;
 import net.minecraft.world.level.levelgen.structure.Structure;
 import net.minecraft.world.level.saveddata.maps.MapDecorationType;
-import net.minecraft.world.level.saveddata.maps.MapId;
-import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
 import net.minecraft.world.level.storage.loot.LootContext;
 import net.minecraft.world.level.storage.loot.functions.ExplorationMapFunction;
 import net.minecraft.world.level.storage.loot.parameters.LootContextParams;
 import net.minecraft.world.level.storage.loot.predicates.LootItemCondition;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
@@ -37,7 +39,6 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
 @Mixin(ExplorationMapFunction.class)
 public abstract class ExplorationMapFunctionMixin {
@@ -80,23 +81,9 @@ public abstract class ExplorationMapFunctionMixin {
 	}
 
 	@Unique
-	private static void asyncLocator$refreshMerchantUIIfApplicable(LootContext context) {
-		var entity = context.hasParameter(LootContextParams.THIS_ENTITY)
-			? context.getParameter(LootContextParams.THIS_ENTITY)
-			: null;
+	private static void asyncLocator$refreshMerchantUIIfApplicable(@Nullable Entity entity) {
 		if (entity instanceof AbstractVillager merchant) {
-			if (merchant.getTradingPlayer() instanceof ServerPlayer tradingPlayer) {
-				int villagerLevel = merchant instanceof Villager villager ? villager.getVillagerData().level() : 1;
-				tradingPlayer.sendMerchantOffers(
-					tradingPlayer.containerMenu.containerId,
-					merchant.getOffers(),
-					villagerLevel,
-					merchant.getVillagerXp(),
-					merchant.showProgressBar(),
-					merchant.canRestock()
-				);
-				ALConstants.logDebug("Refreshed merchant offers for trade UI");
-			}
+			MerchantResync.markDirty(merchant);
 		}
 	}
 
@@ -129,83 +116,70 @@ public abstract class ExplorationMapFunctionMixin {
 			? BlockPos.containing(context.getParameter(LootContextParams.ORIGIN))
 			: BlockPos.containing(x, serverLevel.getHeight() / 2, z);
 
-		MapItemSavedData mapData = MapItemSavedData.createFresh(
-			x,
-			z,
-			this.zoom,
-			false,
-			false,
-			serverLevel.dimension()
-		);
-
-		MapId newMapId = serverLevel.getFreeMapId();
-		serverLevel.setMapData(newMapId, mapData);
-		ALConstants.logDebug("Saved initial MapItemSavedData for new MapId {} for exploration map.", newMapId);
-
-        ItemStack pendingMapStack = CommonLogic.createManagedMap();
-		pendingMapStack.set(DataComponents.MAP_ID, newMapId);
-		ALConstants.logDebug("Assigned MapId {} to exploration map ItemStack.", newMapId);
-
-		AsyncLocator.locate(serverLevel, destination, originPos, searchRadius, skipKnownStructures)
-			.thenOnServerThread(foundPos -> {
-				Component mapName = ExplorationMapFunctionLogic.getCachedName(pendingMapStack);
-				BlockPos inventoryPos = context.hasParameter(LootContextParams.ORIGIN)
-					? BlockPos.containing(context.getParameter(LootContextParams.ORIGIN))
-					: null;
-
-		// First, try to update merchant offer result directly
-		boolean merchantUpdated = false;
-			var thisEntity = context.hasParameter(LootContextParams.THIS_ENTITY)
-				? context.getParameter(LootContextParams.THIS_ENTITY)
-				: null;
-			if (thisEntity instanceof AbstractVillager merchant) {
-				UUID targetId = CommonLogic.getTrackingUUID(pendingMapStack);
-				if (targetId != null) {
-					for (var offer : merchant.getOffers()) {
-						var result = offer.getResult();
-						UUID offerId = CommonLogic.getTrackingUUID(result);
-						if (targetId.equals(offerId)) {
-							if (foundPos != null) {
-								ALConstants.logDebug("Finalizing map in merchant offer (UUID: {})", offerId);
-								CommonLogic.finalizeMap(result, serverLevel, foundPos, this.zoom, mapDecorationHolderOpt.get(), mapName);
-							} else {
-								ALConstants.logDebug("Clearing pending map in merchant offer (UUID: {})", offerId);
-								CommonLogic.clearPendingState(result);
-							}
-							merchantUpdated = true;
-							break;
+		// The map gets its own MapId and data once a location is found
+		Entity thisEntity = context.hasParameter(LootContextParams.THIS_ENTITY)
+			? context.getParameter(LootContextParams.THIS_ENTITY)
+			: null;
+		BlockPos inventoryPos = context.hasParameter(LootContextParams.ORIGIN)
+			? BlockPos.containing(context.getParameter(LootContextParams.ORIGIN))
+			: null;
+		PendingMapJobs.Job job = PendingMapJobs.create(serverLevel, inventoryPos, thisEntity);
+		ItemStack pendingMapStack = job.stack();
+
+		// Chest loot is counted against whoever opened the chest
+		String quotaSource = thisEntity != null ? LocateQuotas.sourceOf(thisEntity) : null;
+		// A loot roll with several exploration maps searches for them together
+		LocateTask<CommonLogic.FoundMap> task = LocateBatcher.locate(LocateFeature.EXPLORATION_MAP, quotaSource, serverLevel, destination, originPos, searchRadius, skipKnownStructures)
+			.thenApplyOffThread(foundPos -> CommonLogic.prepareMap(serverLevel, foundPos, this.zoom))
+			.thenOnServerThread(found -> {
+				PendingMapJobs.remove(job);
+				job.setState(found != null ? PendingMapJobs.State.FOUND : PendingMapJobs.State.NOT_FOUND);
+				BlockPos foundPos = found != null ? found.pos() : null;
+				byte[] biomePreview = found != null ? found.biomePreview() : null;
+				Component mapName = job.name();
+
+				// First, try to update merchant offer result directly
+				boolean merchantUpdated = false;
+				if (job.entity() instanceof AbstractVillager merchant) {
+					MerchantOffer offer = job.findOffer(merchant.getOffers());
+					if (offer != null) {
+						if (foundPos != null) {
+							ALConstants.logDebug("Finalizing map in merchant offer (job {})", job.id());
+							CommonLogic.finalizeMap(offer.getResult(), serverLevel, foundPos, this.zoom, mapDecorationHolderOpt.get(), mapName, biomePreview);
+						} else {
+							ALConstants.logDebug("Clearing pending map in merchant offer (job {})", job.id());
+							CommonLogic.clearPendingState(offer.getResult());
 						}
+						merchantUpdated = true;
 					}
-				} else {
-					ALConstants.logWarn("Managed map lacks tracking UUID in trade context: cannot match offer result");
 				}
-			}
 
-			if (!merchantUpdated) {
-				if (foundPos != null) {
-					ALConstants.logInfo("Async location found for exploration map {}: {}", destination.location(), foundPos);
-					if (inventoryPos != null) {
-						// Update the map in the inventory
-						Services.EXPLORATION_MAP_FUNCTION_LOGIC.updateMap(
-							pendingMapStack, serverLevel, foundPos, this.zoom,
-							mapDecorationHolderOpt.get(), inventoryPos, mapName
-						);
+				if (!merchantUpdated) {
+					if (foundPos != null) {
+						ALConstants.logInfo("Async location found for exploration map {}: {}", destination.location(), foundPos);
+						if (job.containerPos() != null) {
+							// Update the map in the inventory
+							Services.EXPLORATION_MAP_FUNCTION_LOGIC.updateMap(
+								job, serverLevel, foundPos, this.zoom,
+								mapDecorationHolderOpt.get(), mapName, biomePreview
+							);
+						} else {
+							// if it can't find the container, finalize the map
+							CommonLogic.finalizeMap(pendingMapStack, serverLevel, foundPos, this.zoom, mapDecorationHolderOpt.get(), mapName, biomePreview);
+						}
 					} else {
-						// if it can't find the container, finalize the map
-						CommonLogic.finalizeMap(pendingMapStack, serverLevel, foundPos, this.zoom, mapDecorationHolderOpt.get(), mapName);
+						ALConstants.logInfo("Async location not found for exploration map {} -> Invalidating map in inventory (if possible)", destination.location());
+						if (job.containerPos() != null) {
+							Services.EXPLORATION_MAP_FUNCTION_LOGIC.invalidateMap(job, serverLevel);
+						} else {
+							ALConstants.logWarn("Cannot invalidate exploration map - LootContext lacks ORIGIN parameter.");
+							CommonLogic.clearPendingState(pendingMapStack);
+						}
 					}
-				} else {
-					ALConstants.logInfo("Async location not found for exploration map {} -> Invalidating map in inventory (if possible)", destination.location());
-                    if (inventoryPos != null) {
-                        Services.EXPLORATION_MAP_FUNCTION_LOGIC.invalidateMap(pendingMapStack, serverLevel, inventoryPos);
-                    } else {
-                        ALConstants.logWarn("Cannot invalidate exploration map - LootContext lacks ORIGIN parameter.");
-                        CommonLogic.clearPendingState(pendingMapStack);
-                    }
 				}
-			}
-				asyncLocator$refreshMerchantUIIfApplicable(context);
+				asyncLocator$refreshMerchantUIIfApplicable(job.entity());
 			});
+		job.track(task.completableFuture());
 
 		return pendingMapStack;
 	}
@@ -0,0 +1,22 @@
+package brightspark.asynclocator.mixins;
+
+import brightspark.asynclocator.logic.PendingMapJobs;
+import net.minecraft.world.Container;
+import net.minecraft.world.level.storage.loot.LootParams;
+import net.minecraft.world.level.storage.loot.LootTable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(LootTable.class)
+public class LootTableMixin {
+	/*
+		Loot is put into random slots, so this is where pending exploration maps rolled for a container find out which
+		slot they ended up in, for their result to go straight to it.
+	 */
+	@Inject(method = "fill", at = @At("TAIL"))
+	public void notePendingMapSlots(Container container, LootParams params, long seed, CallbackInfo ci) {
+		PendingMapJobs.onContainerFilled(container);
+	}
+}
@@ -0,0 +1,21 @@
+package brightspark.asynclocator.mixins;
+
+import brightspark.asynclocator.locate.LiveStructureIndex;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerLevel.class)
+public class ServerLevelMixin {
+	/*
+		Vanilla calls this once a chunk has its structure starts, both when they're generated and when the chunk is
+		loaded from disk, so it's where the live structure index learns about them.
+	 */
+	@Inject(method = "onStructureStartsAvailable", at = @At("HEAD"))
+	public void recordStructureStarts(ChunkAccess chunk, CallbackInfo ci) {
+		LiveStructureIndex.onStructureStartsAvailable((ServerLevel) (Object) this, chunk);
+	}
+}
@@ -2,7 +2,7 @@ package brightspark.asynclocator.mixins;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.logic.CommonLogic;
-import brightspark.asynclocator.logic.ExplorationMapFunctionLogic;
+import brightspark.asynclocator.logic.PendingMapJobs;
 import brightspark.asynclocator.platform.Services;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.ItemStack;
@@ -21,19 +21,19 @@ public abstract class SetNameFunctionMixin {
 		cancellable = true
 	)
 	private void asyncLocator$cacheNameForPendingMap(ItemStack stack, LootContext context, CallbackInfoReturnable<ItemStack> cir) {
-		if (Services.CONFIG.explorationMapEnabled() && CommonLogic.isEmptyPendingMap(stack)) {
+		if (CommonLogic.isEmptyPendingMap(stack) && Services.CONFIG.explorationMapEnabled()) {
 			Component nameToSet = getNameFromSetNameFunction();
 
 			// If a name was determined, cache it and cancel the original method
 			if (nameToSet != null) {
 				ALConstants.logDebug("SetNameFunctionMixin: Caching name '{}' for pending map and cancelling original set.", nameToSet.getString());
-				ExplorationMapFunctionLogic.cacheName(stack, nameToSet);
+				PendingMapJobs.Job job = PendingMapJobs.get(stack);
+				if (job != null) job.setName(nameToSet);
+				else ALConstants.logWarn("Attempted to cache name for pending map without a job");
 				cir.setReturnValue(stack);
 			} else {
 				 ALConstants.logDebug("SetNameFunctionMixin: No direct name component found for pending map, letting original method run.");
 			}
-		} else {
-			 ALConstants.logDebug("SetNameFunctionMixin: Not a pending map or feature disabled, letting original method run.");
 		}
 	}
 
@@ -2,9 +2,12 @@ package brightspark.asynclocator.mixins;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.logic.CommonLogic;
+import brightspark.asynclocator.logic.PendingMapJobs;
 import brightspark.asynclocator.platform.Services;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -14,13 +17,17 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 public class SlotMixin {
 	@Inject(method = "mayPickup", at = @At(value = "HEAD"), cancellable = true)
 	public void preventPickupOfPendingExplorationMap(Player player, CallbackInfoReturnable<Boolean> cir) {
-		if (Services.CONFIG.explorationMapEnabled()) {
-			// Cast this to Slot to access getItem() method directly
-			Slot slot = (Slot) (Object) this;
-			if (CommonLogic.isEmptyPendingMap(slot.getItem())) {
-				ALConstants.logDebug("Intercepted Slot#mayPickup call");
-				cir.setReturnValue(false);
+		// Cast this to Slot to access getItem() method directly
+		Slot slot = (Slot) (Object) this;
+		// The item check rules out almost every slot, so goes before the config
+		if (CommonLogic.isEmptyPendingMap(slot.getItem()) && Services.CONFIG.explorationMapEnabled()) {
+			ALConstants.logDebug("Intercepted Slot#mayPickup call");
+			// Only the server knows the jobs. A map without one would be stuck, so it becomes an empty map to pick up
+			if (!player.level().isClientSide() && PendingMapJobs.isOrphaned(slot.getItem())) {
+				ALConstants.logDebug("Invalidating pending map without a job");
+				slot.set(new ItemStack(Items.MAP));
 			}
+			cir.setReturnValue(false);
 		}
 	}
 }
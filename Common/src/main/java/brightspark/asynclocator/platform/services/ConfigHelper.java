@@ -1,11 +1,63 @@
 package brightspark.asynclocator.platform.services;
 
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.OverloadPolicy;
+
 public interface ConfigHelper {
 	/**
 	 * The maximum number of threads in the async locator thread pool.
 	 */
 	int locatorThreads();
 
+	/**
+	 * What the locating executor runs its tasks on. With virtual threads, {@link #locatorThreads()} caps how many tasks
+	 * can be doing CPU work at once instead.
+	 */
+	ExecutorMode executorMode();
+
+	/**
+	 * The maximum number of locate tasks that can be running at once on virtual threads, including those waiting on
+	 * chunks.
+	 */
+	int virtualThreadTasks();
+
+	/**
+	 * The number of extra threads a single search can split its work onto, or 0 to search on one thread.
+	 */
+	int parallelSearchThreads();
+
+	/**
+	 * The maximum number of locate tasks that can be waiting in the queue.
+	 */
+	int maxQueuedTasks();
+
+	/**
+	 * What to do with new locate tasks when the queue is full.
+	 */
+	OverloadPolicy overloadPolicy();
+
+	/**
+	 * How many seconds a locate task can take from being queued before it gives up, or 0 for no limit.
+	 */
+	int locateTimeoutSeconds();
+
+	/**
+	 * Whether structure starts found by searches are kept in the world folder, so searches after a restart can use them.
+	 */
+	boolean persistentStructureStore();
+
+	/**
+	 * How many chunks' structure starts are kept in memory per dimension as chunks are generated or loaded. 0 turns it
+	 * off.
+	 */
+	int liveStructureIndexChunks();
+
+	/**
+	 * How many microseconds of each server tick can be spent applying finished locates. 0 means no limit.
+	 */
+	int resultApplyBudgetMicros();
+
 	/**
 	 * The maximum search radius for the /locate biome command.
 	 */
@@ -47,4 +99,15 @@ public interface ConfigHelper {
 	 * If true, enables asynchronous locating of structures for villager trades.
 	 */
 	boolean villagerTradeEnabled();
+
+	/**
+	 * The priority of locate tasks queued by the given feature. Higher priority tasks run first, while lower priority
+	 * tasks gain priority the longer they wait.
+	 */
+	int locatePriority(LocateFeature feature);
+
+	/**
+	 * How many locates each source can make per minute for the given feature, or 0 for no limit.
+	 */
+	int locateQuota(LocateFeature feature);
 }
@@ -1,28 +1,34 @@
 package brightspark.asynclocator.platform.services;
 
+import brightspark.asynclocator.logic.PendingMapJobs;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.saveddata.maps.MapDecorationType;
 import org.jetbrains.annotations.Nullable;
 
 public interface ExplorationMapFunctionLogicHelper {
-	void invalidateMap(ItemStack mapStack, ServerLevel level, BlockPos invPos);
+	/**
+	 * Replaces the pending exploration map of the job, in the inventory at the job's container position, with an empty
+	 * map
+	 */
+	void invalidateMap(PendingMapJobs.Job job, ServerLevel level);
 
 	/**
-	 * Updates a pending exploration map located in an inventory at the given position with the found feature details
-	 * Implementations should find the mapStack instance in the inventory at invPos,
-	 * apply the feature details to it and ensure the updated stack is saved back into the inventory slot
+	 * Updates the pending exploration map of the job, in the inventory at the job's container position, with the found
+	 * feature details
+	 * Implementations should find the job's map in the inventory with {@link PendingMapJobs.Job#findSlot},
+	 * apply the feature details to it and ensure the updated stack is saved back into the inventory slot.
+	 * The biome preview, if given, is the one rendered off the server thread by CommonLogic.prepareMap
 	 */
 	void updateMap(
-		ItemStack mapStack,
+		PendingMapJobs.Job job,
 		ServerLevel level,
 		BlockPos pos,
 		int scale,
 		Holder<MapDecorationType> destinationTypeHolder,
-		BlockPos invPos,
-		@Nullable Component displayName
+		@Nullable Component displayName,
+		@Nullable byte[] biomePreview
 	);
 }
@@ -2,6 +2,8 @@ package brightspark.asynclocator;
 
 import brightspark.asynclocator.SparkConfig.Category;
 import brightspark.asynclocator.SparkConfig.Config;
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.OverloadPolicy;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.IOException;
@@ -13,9 +15,45 @@ public class AsyncLocatorConfigFabric {
 	private static final int DEFAULT_THREADS = 1;
 	private static final int MAX_THREADS = 64;
 
+	private static final ExecutorMode DEFAULT_EXECUTOR_MODE = ExecutorMode.FIXED;
+	private static final int DEFAULT_VIRTUAL_THREAD_TASKS = 64;
+	private static final int MAX_VIRTUAL_THREAD_TASKS = 1024;
+
+	private static final int DEFAULT_MAX_QUEUED_TASKS = 1024;
+	private static final int MIN_MAX_QUEUED_TASKS = 16;
+	private static final int MAX_MAX_QUEUED_TASKS = 65536;
+	private static final OverloadPolicy DEFAULT_OVERLOAD_POLICY = OverloadPolicy.REJECT;
+
+	private static final int DEFAULT_LOCATE_TIMEOUT_SECONDS = 120;
+	private static final int MAX_LOCATE_TIMEOUT_SECONDS = 3600;
+	private static final int DEFAULT_LIVE_STRUCTURE_INDEX_CHUNKS = 65_536;
+	private static final int MAX_LIVE_STRUCTURE_INDEX_CHUNKS = 1_048_576;
+	private static final int DEFAULT_RESULT_APPLY_BUDGET_MICROS = 2_000;
+	private static final int MAX_RESULT_APPLY_BUDGET_MICROS = 50_000;
+
 	private static final int DEFAULT_BIOME_RADIUS = 6400;
 	private static final int MIN_BIOME_RADIUS = 1600;
 	private static final int MAX_BIOME_RADIUS = 12800;
+
+	private static final int MIN_PRIORITY = 0;
+	private static final int MAX_PRIORITY = 20;
+	private static final int DEFAULT_LOCATE_COMMAND_PRIORITY = 10;
+	private static final int DEFAULT_LOCATE_BIOME_COMMAND_PRIORITY = 10;
+	private static final int DEFAULT_EYE_OF_ENDER_PRIORITY = 8;
+	private static final int DEFAULT_VILLAGER_TRADE_PRIORITY = 4;
+	private static final int DEFAULT_EXPLORATION_MAP_PRIORITY = 2;
+	private static final int DEFAULT_DOLPHIN_TREASURE_PRIORITY = 1;
+	private static final int DEFAULT_OTHER_PRIORITY = 5;
+
+	private static final int MIN_QUOTA = 0;
+	private static final int MAX_QUOTA = 6000;
+	private static final int DEFAULT_LOCATE_COMMAND_QUOTA = 20;
+	private static final int DEFAULT_LOCATE_BIOME_COMMAND_QUOTA = 10;
+	private static final int DEFAULT_EYE_OF_ENDER_QUOTA = 30;
+	private static final int DEFAULT_VILLAGER_TRADE_QUOTA = 30;
+	private static final int DEFAULT_EXPLORATION_MAP_QUOTA = 60;
+	private static final int DEFAULT_DOLPHIN_TREASURE_QUOTA = 60;
+	private static final int DEFAULT_OTHER_QUOTA = 0;
 	@Config(
 		value = "asyncLocatorThreads",
 		comment = """
@@ -30,6 +68,101 @@ public class AsyncLocatorConfigFabric {
 		max = MAX_THREADS // Practically in no case will you need the maximum amount
 	)
 	public static int LOCATOR_THREADS = 1;
+	@Config(
+		value = "executorMode",
+		comment = """
+			What locate tasks run on. One of:
+			FIXED - A pool of asyncLocatorThreads threads.
+			VIRTUAL - Virtual threads, so tasks waiting on chunks to load or generate don't hold up a thread.
+			Up to virtualThreadTasks tasks run at once, but only asyncLocatorThreads of them can use the CPU at a time.
+			This is worth trying if locates often have to wait on chunks, e.g. villager maps in new areas.
+			"""
+	)
+	public static String EXECUTOR_MODE = DEFAULT_EXECUTOR_MODE.name();
+	@Config(
+		value = "virtualThreadTasks",
+		comment = """
+			The maximum number of locate tasks running at once when executorMode is VIRTUAL,
+			including those waiting on chunks.
+			""",
+		min = 1,
+		max = MAX_VIRTUAL_THREAD_TASKS
+	)
+	public static int VIRTUAL_THREAD_TASKS = DEFAULT_VIRTUAL_THREAD_TASKS;
+	@Config(
+		value = "parallelSearchThreads",
+		comment = """
+			The number of extra threads a single structure or biome search can split its work onto.
+			This makes long searches (e.g. a woodland mansion map from the middle of an ocean, or a rare biome
+			with a large biomeSearchRadius) finish sooner,
+			at the cost of more CPU use and some chunks past the result being checked.
+			Searches give the same result either way. 0 turns parallel searching off.
+			""",
+		min = 0,
+		max = MAX_THREADS
+	)
+	public static int PARALLEL_SEARCH_THREADS = 0;
+	@Config(
+		value = "maxQueuedTasks",
+		comment = """
+			The maximum number of locate tasks that can be waiting to be run.
+			Once the queue is full, new tasks are handled according to overloadPolicy.
+			""",
+		min = MIN_MAX_QUEUED_TASKS,
+		max = MAX_MAX_QUEUED_TASKS
+	)
+	public static int MAX_QUEUED_TASKS = DEFAULT_MAX_QUEUED_TASKS;
+	@Config(
+		value = "overloadPolicy",
+		comment = """
+			What to do with new locate tasks when the queue is full. One of:
+			REJECT - Turn the new task away.
+			DROP_LOWEST_PRIORITY - Drop the oldest queued task with the lowest priority, if it's lower than the new task's.
+			Rejected tasks end up as if nothing was found, except for the locate commands which ask to try again.
+			"""
+	)
+	public static String OVERLOAD_POLICY = DEFAULT_OVERLOAD_POLICY.name();
+	@Config(
+		value = "locateTimeoutSeconds",
+		comment = """
+			How many seconds a locate can take from being queued before it gives up as if nothing was found.
+			0 means no limit.
+			""",
+		min = 0,
+		max = MAX_LOCATE_TIMEOUT_SECONDS
+	)
+	public static int LOCATE_TIMEOUT_SECONDS = DEFAULT_LOCATE_TIMEOUT_SECONDS;
+	@Config(
+		value = "persistentStructureStore",
+		comment = """
+			If true, structure starts found by searches are kept in the asynclocator folder of the world,
+			so searches after a restart don't have to check those chunks again.
+			It's cleared automatically if the seed or worldgen datapacks change.
+			"""
+	)
+	public static boolean PERSISTENT_STRUCTURE_STORE = true;
+	@Config(
+		value = "liveStructureIndexChunks",
+		comment = """
+			How many chunks' structure starts are kept in memory per dimension as chunks are generated or loaded,
+			so searches can skip checking those chunks. Each chunk takes around 40 bytes.
+			The chunks known the longest are forgotten first once full. 0 turns it off.
+			""",
+		min = 0,
+		max = MAX_LIVE_STRUCTURE_INDEX_CHUNKS
+	)
+	public static int LIVE_STRUCTURE_INDEX_CHUNKS = DEFAULT_LIVE_STRUCTURE_INDEX_CHUNKS;
+	@Config(
+		value = "resultApplyBudgetMicros",
+		comment = """
+			How many microseconds of each server tick can be spent applying finished locates, such as filling in maps.
+			Whatever doesn't fit waits for the next tick, and at least one is always applied each tick.
+			0 means no limit.
+			""",
+		min = 0,
+		max = MAX_RESULT_APPLY_BUDGET_MICROS
+	)
+	public static int RESULT_APPLY_BUDGET_MICROS = DEFAULT_RESULT_APPLY_BUDGET_MICROS;
 	@Config(
 		value = "biomeSearchRadius",
 		comment = """
@@ -84,11 +217,152 @@ public class AsyncLocatorConfigFabric {
 		public static boolean VILLAGER_TRADE_ENABLED = true;
 	}
 
+	@Category("Priorities")
+	public static class Priorities {
+		@Config(
+			value = "locateCommandPriority",
+			comment = """
+				Priority of structure locates for the locate command.
+				Higher priority locates run first when several are queued. Every 0.5 seconds a locate
+				has been waiting counts as one extra point of priority, so lower priorities still get run.
+				""",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int LOCATE_COMMAND_PRIORITY = DEFAULT_LOCATE_COMMAND_PRIORITY;
+		@Config(
+			value = "locateBiomeCommandPriority",
+			comment = "Priority of biome locates for the locate command.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int LOCATE_BIOME_COMMAND_PRIORITY = DEFAULT_LOCATE_BIOME_COMMAND_PRIORITY;
+		@Config(
+			value = "eyeOfEnderPriority",
+			comment = "Priority of structure locates when Eyes Of Ender are thrown.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int EYE_OF_ENDER_PRIORITY = DEFAULT_EYE_OF_ENDER_PRIORITY;
+		@Config(
+			value = "villagerTradePriority",
+			comment = "Priority of structure locates for villager trades.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int VILLAGER_TRADE_PRIORITY = DEFAULT_VILLAGER_TRADE_PRIORITY;
+		@Config(
+			value = "explorationMapPriority",
+			comment = "Priority of structure locates for exploration maps found in chests.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int EXPLORATION_MAP_PRIORITY = DEFAULT_EXPLORATION_MAP_PRIORITY;
+		@Config(
+			value = "dolphinTreasurePriority",
+			comment = "Priority of structure locates for dolphin treasures.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int DOLPHIN_TREASURE_PRIORITY = DEFAULT_DOLPHIN_TREASURE_PRIORITY;
+		@Config(
+			value = "otherPriority",
+			comment = "Priority of locates queued by other mods.",
+			min = MIN_PRIORITY,
+			max = MAX_PRIORITY
+		)
+		public static int OTHER_PRIORITY = DEFAULT_OTHER_PRIORITY;
+	}
+
+	@Category("Quotas")
+	public static class Quotas {
+		@Config(
+			value = "locateCommandQuota",
+			comment = """
+				How many structure locates each player or command source can make per minute with the locate command.
+				Requests over the quota are refused with a message to try again. 0 means no limit.
+				""",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int LOCATE_COMMAND_QUOTA = DEFAULT_LOCATE_COMMAND_QUOTA;
+		@Config(
+			value = "locateBiomeCommandQuota",
+			comment = "How many biome locates each player or command source can make per minute with the locate command.",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int LOCATE_BIOME_COMMAND_QUOTA = DEFAULT_LOCATE_BIOME_COMMAND_QUOTA;
+		@Config(
+			value = "eyeOfEnderQuota",
+			comment = """
+				How many Eyes Of Ender each player can throw per minute before they have to wait.
+				Requests over the quota are delayed until the quota refills, or refused if too many are waiting.
+				""",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int EYE_OF_ENDER_QUOTA = DEFAULT_EYE_OF_ENDER_QUOTA;
+		@Config(
+			value = "villagerTradeQuota",
+			comment = "How many treasure map trades per minute each trading player, or each villager without one, can locate.",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int VILLAGER_TRADE_QUOTA = DEFAULT_VILLAGER_TRADE_QUOTA;
+		@Config(
+			value = "explorationMapQuota",
+			comment = "How many exploration maps in chests each player can cause to be located per minute.",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int EXPLORATION_MAP_QUOTA = DEFAULT_EXPLORATION_MAP_QUOTA;
+		@Config(
+			value = "dolphinTreasureQuota",
+			comment = "How many dolphin treasure locates each dolphin can make per minute.",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int DOLPHIN_TREASURE_QUOTA = DEFAULT_DOLPHIN_TREASURE_QUOTA;
+		@Config(
+			value = "otherQuota",
+			comment = "How many locates per minute other mods can make for each source they give.",
+			min = MIN_QUOTA,
+			max = MAX_QUOTA
+		)
+		public static int OTHER_QUOTA = DEFAULT_OTHER_QUOTA;
+	}
+
 	private AsyncLocatorConfigFabric() {}
 
+	public static ExecutorMode getExecutorMode() {
+		try {
+			return ExecutorMode.valueOf(EXECUTOR_MODE);
+		} catch (IllegalArgumentException e) {
+			return DEFAULT_EXECUTOR_MODE;
+		}
+	}
+
+	public static OverloadPolicy getOverloadPolicy() {
+		try {
+			return OverloadPolicy.valueOf(OVERLOAD_POLICY);
+		} catch (IllegalArgumentException e) {
+			return DEFAULT_OVERLOAD_POLICY;
+		}
+	}
+
 	//Helper method
 	private static void resetToDefaults() {
 		LOCATOR_THREADS = DEFAULT_THREADS;
+		EXECUTOR_MODE = DEFAULT_EXECUTOR_MODE.name();
+		VIRTUAL_THREAD_TASKS = DEFAULT_VIRTUAL_THREAD_TASKS;
+		PARALLEL_SEARCH_THREADS = 0;
+		MAX_QUEUED_TASKS = DEFAULT_MAX_QUEUED_TASKS;
+		OVERLOAD_POLICY = DEFAULT_OVERLOAD_POLICY.name();
+		LOCATE_TIMEOUT_SECONDS = DEFAULT_LOCATE_TIMEOUT_SECONDS;
+		PERSISTENT_STRUCTURE_STORE = true;
+		LIVE_STRUCTURE_INDEX_CHUNKS = DEFAULT_LIVE_STRUCTURE_INDEX_CHUNKS;
+		RESULT_APPLY_BUDGET_MICROS = DEFAULT_RESULT_APPLY_BUDGET_MICROS;
 		BIOME_SEARCH_RADIUS = DEFAULT_BIOME_RADIUS;
 		REMOVE_OFFER = false;
 		FeatureToggles.DOLPHIN_TREASURE_ENABLED = true;
@@ -97,10 +371,28 @@ public class AsyncLocatorConfigFabric {
 		FeatureToggles.LOCATE_COMMAND_ENABLED = true;
 		FeatureToggles.LOCATE_BIOME_COMMAND_ENABLED = true;
 		FeatureToggles.VILLAGER_TRADE_ENABLED = true;
+		Priorities.LOCATE_COMMAND_PRIORITY = DEFAULT_LOCATE_COMMAND_PRIORITY;
+		Priorities.LOCATE_BIOME_COMMAND_PRIORITY = DEFAULT_LOCATE_BIOME_COMMAND_PRIORITY;
+		Priorities.EYE_OF_ENDER_PRIORITY = DEFAULT_EYE_OF_ENDER_PRIORITY;
+		Priorities.VILLAGER_TRADE_PRIORITY = DEFAULT_VILLAGER_TRADE_PRIORITY;
+		Priorities.EXPLORATION_MAP_PRIORITY = DEFAULT_EXPLORATION_MAP_PRIORITY;
+		Priorities.DOLPHIN_TREASURE_PRIORITY = DEFAULT_DOLPHIN_TREASURE_PRIORITY;
+		Priorities.OTHER_PRIORITY = DEFAULT_OTHER_PRIORITY;
+		Quotas.LOCATE_COMMAND_QUOTA = DEFAULT_LOCATE_COMMAND_QUOTA;
+		Quotas.LOCATE_BIOME_COMMAND_QUOTA = DEFAULT_LOCATE_BIOME_COMMAND_QUOTA;
+		Quotas.EYE_OF_ENDER_QUOTA = DEFAULT_EYE_OF_ENDER_QUOTA;
+		Quotas.VILLAGER_TRADE_QUOTA = DEFAULT_VILLAGER_TRADE_QUOTA;
+		Quotas.EXPLORATION_MAP_QUOTA = DEFAULT_EXPLORATION_MAP_QUOTA;
+		Quotas.DOLPHIN_TREASURE_QUOTA = DEFAULT_DOLPHIN_TREASURE_QUOTA;
+		Quotas.OTHER_QUOTA = DEFAULT_OTHER_QUOTA;
+	}
+
+	static Path configFile() {
+		return FabricLoader.getInstance().getConfigDir().resolve(ALConstants.MOD_ID + ".properties");
 	}
 
 	public static void init() {
-		Path configFile = FabricLoader.getInstance().getConfigDir().resolve(ALConstants.MOD_ID + ".properties");
+		Path configFile = configFile();
 
 		if (Files.exists(configFile)) {
 			ALConstants.logInfo("Config file found");
@@ -118,7 +410,34 @@ public class AsyncLocatorConfigFabric {
 					LOCATOR_THREADS = DEFAULT_THREADS;
 					needsRewrite = true;
 				}
+
+				if (!EXECUTOR_MODE.equals(getExecutorMode().name())) {
+					ALConstants.logError(
+							"Invalid executorMode value ({}). Resetting to default ({}).",
+							EXECUTOR_MODE, DEFAULT_EXECUTOR_MODE
+					);
+					EXECUTOR_MODE = DEFAULT_EXECUTOR_MODE.name();
+					needsRewrite = true;
+				}
 				
+				if (MAX_QUEUED_TASKS > MAX_MAX_QUEUED_TASKS || MAX_QUEUED_TASKS < MIN_MAX_QUEUED_TASKS) {
+					ALConstants.logError(
+							"Invalid maxQueuedTasks value ({}). Must be between {}-{}. Resetting to default ({}).",
+							MAX_QUEUED_TASKS, MIN_MAX_QUEUED_TASKS, MAX_MAX_QUEUED_TASKS, DEFAULT_MAX_QUEUED_TASKS
+					);
+					MAX_QUEUED_TASKS = DEFAULT_MAX_QUEUED_TASKS;
+					needsRewrite = true;
+				}
+
+				if (!OVERLOAD_POLICY.equals(getOverloadPolicy().name())) {
+					ALConstants.logError(
+							"Invalid overloadPolicy value ({}). Resetting to default ({}).",
+							OVERLOAD_POLICY, DEFAULT_OVERLOAD_POLICY
+					);
+					OVERLOAD_POLICY = DEFAULT_OVERLOAD_POLICY.name();
+					needsRewrite = true;
+				}
+
 				if (BIOME_SEARCH_RADIUS > MAX_BIOME_RADIUS || BIOME_SEARCH_RADIUS < MIN_BIOME_RADIUS) {
 					ALConstants.logError(
 							"Invalid biomeSearchRadius value ({}). Must be between {}-{}. Resetting to default ({}).",
@@ -1,7 +1,9 @@
 package brightspark.asynclocator;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 
 public class AsyncLocatorModFabric implements ModInitializer {
 	@Override
@@ -9,8 +11,21 @@ public class AsyncLocatorModFabric implements ModInitializer {
 		// ALDataComponents.init();
 		AsyncLocatorConfigFabric.init();
 
-		ServerLifecycleEvents.SERVER_STARTING.register(server -> AsyncLocator.setupExecutorService());
-		ServerLifecycleEvents.SERVER_STOPPING.register(server -> AsyncLocator.shutdownExecutorService());
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+			AsyncLocator.setupExecutorService();
+			ConfigWatcher.start(server);
+		});
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+			ConfigWatcher.stop();
+			AsyncLocator.shutdownExecutorService();
+		});
+		ServerLifecycleEvents.END_DATA_PACK_RELOAD.register(
+			(server, resourceManager, success) -> AsyncLocator.onDatapackReload()
+		);
+		ServerTickEvents.END_SERVER_TICK.register(server -> AsyncLocator.onServerTickEnd(server));
+		CommandRegistrationCallback.EVENT.register(
+			(dispatcher, registryAccess, environment) -> AsyncLocatorCommand.register(dispatcher)
+		);
 
 		AsyncLocatorModCommon.printConfigs();
 	}
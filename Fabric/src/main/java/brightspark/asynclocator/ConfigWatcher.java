@@ -0,0 +1,122 @@
+package brightspark.asynclocator;
+
+import net.minecraft.server.MinecraftServer;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the config file while a server is running, and reloads it when it's changed so it can be retuned without a
+ * restart. Changes to the executor are applied through {@link AsyncLocator#reconfigureExecutorService()}, and
+ * everything else is read from the config as it's used.
+ * <p>
+ * Only the watching happens on the watcher thread. Reloads are handed to the server thread, so the config isn't
+ * rewritten while the game is reading it and the executor is only ever set up, reconfigured or shut down from there.
+ */
+class ConfigWatcher {
+	// Editors often write a file in several steps, so changes are left to settle before they're read
+	private static final long SETTLE_MILLIS = 200;
+
+	private static WatchService WATCH_SERVICE = null;
+	private static Thread THREAD = null;
+	// The config may rewrite the file itself while loading, which shouldn't load it again
+	private static volatile FileTime LAST_LOADED = null;
+
+	private ConfigWatcher() {}
+
+	static synchronized void start(MinecraftServer server) {
+		stop();
+		Path configFile = AsyncLocatorConfigFabric.configFile();
+		LAST_LOADED = lastModified(configFile);
+		try {
+			WatchService watchService = FileSystems.getDefault().newWatchService();
+			configFile.getParent().register(
+				watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY
+			);
+			WATCH_SERVICE = watchService;
+		} catch (IOException e) {
+			ALConstants.logError(e, "Failed to watch config file {} - changes will need a restart", configFile);
+			return;
+		}
+		WatchService watchService = WATCH_SERVICE;
+		THREAD = new Thread(() -> watch(server, watchService, configFile), ALConstants.MOD_ID + "-config-watcher");
+		THREAD.setDaemon(true);
+		THREAD.start();
+	}
+
+	static synchronized void stop() {
+		if (WATCH_SERVICE == null) {
+			return;
+		}
+		try {
+			WATCH_SERVICE.close();
+		} catch (IOException e) {
+			ALConstants.logError(e, "Failed to stop watching config file");
+		}
+		WATCH_SERVICE = null;
+		THREAD = null;
+	}
+
+	private static void watch(MinecraftServer server, WatchService watchService, Path configFile) {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.context() instanceof Path path && configFile.getFileName().equals(path)) {
+						changed = true;
+					}
+				}
+				key.reset();
+				if (!changed) {
+					continue;
+				}
+
+				TimeUnit.MILLISECONDS.sleep(SETTLE_MILLIS);
+				// Take the events from settling as well, as they're the same change
+				WatchKey settled;
+				while ((settled = watchService.poll()) != null) {
+					settled.pollEvents();
+					settled.reset();
+				}
+				FileTime modified = lastModified(configFile);
+				if (modified == null || modified.equals(LAST_LOADED)) {
+					continue;
+				}
+
+				ALConstants.logInfo("Config file changed - reloading on the server thread");
+				server.execute(() -> reload(configFile));
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// Stopped
+		} catch (Exception e) {
+			ALConstants.logError(e, "Config file watcher stopped unexpectedly - changes will need a restart");
+		}
+	}
+
+	private static void reload(Path configFile) {
+		AsyncLocatorConfigFabric.init();
+		LAST_LOADED = lastModified(configFile);
+		AsyncLocatorModCommon.printConfigs();
+		AsyncLocator.reconfigureExecutorService();
+	}
+
+	private static FileTime lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
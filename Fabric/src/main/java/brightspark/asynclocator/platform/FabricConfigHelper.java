@@ -1,6 +1,11 @@
 package brightspark.asynclocator.platform;
 
 import brightspark.asynclocator.AsyncLocatorConfigFabric;
+import brightspark.asynclocator.AsyncLocatorConfigFabric.Priorities;
+import brightspark.asynclocator.AsyncLocatorConfigFabric.Quotas;
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.OverloadPolicy;
 import brightspark.asynclocator.platform.services.ConfigHelper;
 
 public class FabricConfigHelper implements ConfigHelper {
@@ -9,11 +14,56 @@ public class FabricConfigHelper implements ConfigHelper {
 		return AsyncLocatorConfigFabric.LOCATOR_THREADS;
 	}
 
+	@Override
+	public ExecutorMode executorMode() {
+		return AsyncLocatorConfigFabric.getExecutorMode();
+	}
+
+	@Override
+	public int virtualThreadTasks() {
+		return AsyncLocatorConfigFabric.VIRTUAL_THREAD_TASKS;
+	}
+
+	@Override
+	public int parallelSearchThreads() {
+		return AsyncLocatorConfigFabric.PARALLEL_SEARCH_THREADS;
+	}
+
+	@Override
+	public int maxQueuedTasks() {
+		return AsyncLocatorConfigFabric.MAX_QUEUED_TASKS;
+	}
+
+	@Override
+	public OverloadPolicy overloadPolicy() {
+		return AsyncLocatorConfigFabric.getOverloadPolicy();
+	}
+
+	@Override
+	public int locateTimeoutSeconds() {
+		return AsyncLocatorConfigFabric.LOCATE_TIMEOUT_SECONDS;
+	}
+
 	@Override
 	public int biomeSearchRadius() {
 		return AsyncLocatorConfigFabric.BIOME_SEARCH_RADIUS;
 	}
 
+	@Override
+	public boolean persistentStructureStore() {
+		return AsyncLocatorConfigFabric.PERSISTENT_STRUCTURE_STORE;
+	}
+
+	@Override
+	public int liveStructureIndexChunks() {
+		return AsyncLocatorConfigFabric.LIVE_STRUCTURE_INDEX_CHUNKS;
+	}
+
+	@Override
+	public int resultApplyBudgetMicros() {
+		return AsyncLocatorConfigFabric.RESULT_APPLY_BUDGET_MICROS;
+	}
+
 	@Override
 	public boolean removeOffer() {
 		return AsyncLocatorConfigFabric.REMOVE_OFFER;
@@ -48,4 +98,30 @@ public class FabricConfigHelper implements ConfigHelper {
 	public boolean villagerTradeEnabled() {
 		return AsyncLocatorConfigFabric.FeatureToggles.VILLAGER_TRADE_ENABLED;
 	}
+
+	@Override
+	public int locatePriority(LocateFeature feature) {
+		return switch (feature) {
+			case LOCATE_COMMAND -> Priorities.LOCATE_COMMAND_PRIORITY;
+			case LOCATE_BIOME_COMMAND -> Priorities.LOCATE_BIOME_COMMAND_PRIORITY;
+			case EYE_OF_ENDER -> Priorities.EYE_OF_ENDER_PRIORITY;
+			case VILLAGER_TRADE -> Priorities.VILLAGER_TRADE_PRIORITY;
+			case EXPLORATION_MAP -> Priorities.EXPLORATION_MAP_PRIORITY;
+			case DOLPHIN_TREASURE -> Priorities.DOLPHIN_TREASURE_PRIORITY;
+			case OTHER -> Priorities.OTHER_PRIORITY;
+		};
+	}
+
+	@Override
+	public int locateQuota(LocateFeature feature) {
+		return switch (feature) {
+			case LOCATE_COMMAND -> Quotas.LOCATE_COMMAND_QUOTA;
+			case LOCATE_BIOME_COMMAND -> Quotas.LOCATE_BIOME_COMMAND_QUOTA;
+			case EYE_OF_ENDER -> Quotas.EYE_OF_ENDER_QUOTA;
+			case VILLAGER_TRADE -> Quotas.VILLAGER_TRADE_QUOTA;
+			case EXPLORATION_MAP -> Quotas.EXPLORATION_MAP_QUOTA;
+			case DOLPHIN_TREASURE -> Quotas.DOLPHIN_TREASURE_QUOTA;
+			case OTHER -> Quotas.OTHER_QUOTA;
+		};
+	}
 }
@@ -2,6 +2,7 @@ package brightspark.asynclocator.platform;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.logic.CommonLogic;
+import brightspark.asynclocator.logic.PendingMapJobs;
 import brightspark.asynclocator.platform.services.ExplorationMapFunctionLogicHelper;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
@@ -14,75 +15,65 @@ import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.saveddata.maps.MapDecorationType;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.UUID;
 import java.util.function.BiConsumer;
 
 public class FabricExplorationMapFunctionLogicHelper implements ExplorationMapFunctionLogicHelper {
 	@Override
-	public void invalidateMap(ItemStack mapStack, ServerLevel level, BlockPos invPos) {
-		boolean updated = handleUpdateMapInContainer(mapStack, level, invPos, (container, slot) -> {
+	public void invalidateMap(PendingMapJobs.Job job, ServerLevel level) {
+		boolean updated = handleUpdateMapInContainer(job, level, (container, slot) -> {
 			ALConstants.logDebug("Invalidating map in Fabric container slot {}", slot);
 			container.setItem(slot, new ItemStack(Items.MAP));
 		});
 		if (!updated) {
 			ALConstants.logDebug("Fabric invalidateMap fallback: no container/slot match. Clearing pending state in-place.");
-			CommonLogic.clearPendingState(mapStack);
+			CommonLogic.clearPendingState(job.stack());
 		}
 	}
 
 	@Override
 	public void updateMap(
-		ItemStack mapStack,
+		PendingMapJobs.Job job,
 		ServerLevel level,
 		BlockPos pos,
 		int scale,
 		Holder<MapDecorationType> destinationTypeHolder,
-		BlockPos invPos,
-		@Nullable Component displayName
+		@Nullable Component displayName,
+		@Nullable byte[] biomePreview
 	) {
-		boolean updated = handleUpdateMapInContainer(mapStack, level, invPos, (container, slot) -> {
+		boolean updated = handleUpdateMapInContainer(job, level, (container, slot) -> {
 		ItemStack actualStack = container.getItem(slot);
 
-		CommonLogic.finalizeMap(actualStack, level, pos, scale, destinationTypeHolder, displayName);
+		CommonLogic.finalizeMap(actualStack, level, pos, scale, destinationTypeHolder, displayName, biomePreview);
 			ALConstants.logDebug("Updated map in Fabric container slot {}, broadcasting changes.", slot);
 			container.setItem(slot, actualStack);
 
 		});
 		if (!updated) {
 			ALConstants.logDebug("Fabric updateMap fallback: no container/slot match. Finalizing pending map in-place.");
-			CommonLogic.finalizeMap(mapStack, level, pos, scale, destinationTypeHolder, displayName);
+			CommonLogic.finalizeMap(job.stack(), level, pos, scale, destinationTypeHolder, displayName, biomePreview);
 		}
 	}
 
 	// Now works with any container
 	private static boolean handleUpdateMapInContainer(
-		ItemStack mapStackToFind,
+		PendingMapJobs.Job job,
 		ServerLevel level,
-		BlockPos inventoryPos,
 		BiConsumer<Container, Integer> handleSlotFound
 	) {
+		BlockPos inventoryPos = job.containerPos();
+		if (inventoryPos == null) {
+			return false;
+		}
 		BlockEntity be = level.getBlockEntity(inventoryPos);
 		if (be instanceof Container container) {
-			boolean found = false;
-			UUID targetId = CommonLogic.getTrackingUUID(mapStackToFind);
-
-			if (targetId != null) {
-				for (int i = 0; i < container.getContainerSize(); i++) {
-					ItemStack slotStack = container.getItem(i);
-					UUID slotId = CommonLogic.getTrackingUUID(slotStack);
-					if (targetId.equals(slotId)) {
-						handleSlotFound.accept(container, i);
-						CommonLogic.broadcastContainerChanges(level, be, container);
-						found = true;
-						break;
-					}
-				}
+			int slot = job.findSlot(container.getContainerSize(), container::getItem);
+			if (slot >= 0) {
+				handleSlotFound.accept(container, slot);
+				CommonLogic.broadcastContainerChanges(level, be, container);
+				return true;
 			}
-
-			if (!found) {
-				ALConstants.logWarn("Could not find map with UUID {} in container {} at {}", targetId, be.getClass().getSimpleName(), inventoryPos);
-			}
-			return found;
+			ALConstants.logWarn("Could not find map of job {} in container {} at {}", job.id(), be.getClass().getSimpleName(), inventoryPos);
+			return false;
 		} else {
 			ALConstants.logWarn(
 				"No Container at inventory position {} in level {}",
@@ -1,5 +1,7 @@
 package brightspark.asynclocator;
 
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.OverloadPolicy;
 import net.neoforged.neoforge.common.ModConfigSpec;
 import net.neoforged.neoforge.common.ModConfigSpec.ConfigValue;
 
@@ -7,13 +9,42 @@ public class AsyncLocatorConfigNeoForge {
 
 	private static final int DEFAULT_THREADS = 1;
 	private static final int MAX_THREADS = 64;
+
+	private static final int DEFAULT_VIRTUAL_THREAD_TASKS = 64;
+	private static final int MAX_VIRTUAL_THREAD_TASKS = 1024;
 	
+	private static final int DEFAULT_MAX_QUEUED_TASKS = 1024;
+	private static final int MIN_MAX_QUEUED_TASKS = 16;
+	private static final int MAX_MAX_QUEUED_TASKS = 65536;
+
+	private static final int DEFAULT_LOCATE_TIMEOUT_SECONDS = 120;
+	private static final int MAX_LOCATE_TIMEOUT_SECONDS = 3600;
+	private static final int DEFAULT_LIVE_STRUCTURE_INDEX_CHUNKS = 65_536;
+	private static final int MAX_LIVE_STRUCTURE_INDEX_CHUNKS = 1_048_576;
+	private static final int DEFAULT_RESULT_APPLY_BUDGET_MICROS = 2_000;
+	private static final int MAX_RESULT_APPLY_BUDGET_MICROS = 50_000;
+
 	private static final int DEFAULT_BIOME_RADIUS = 6400;
 	private static final int MIN_BIOME_RADIUS = 1600;
 	private static final int MAX_BIOME_RADIUS = 12800;
 
+	private static final int MIN_PRIORITY = 0;
+	private static final int MAX_PRIORITY = 20;
+
+	private static final int MIN_QUOTA = 0;
+	private static final int MAX_QUOTA = 6000;
+
 	public static ModConfigSpec SPEC;
 	public static ConfigValue<Integer> LOCATOR_THREADS;
+	public static ConfigValue<ExecutorMode> EXECUTOR_MODE;
+	public static ConfigValue<Integer> VIRTUAL_THREAD_TASKS;
+	public static ConfigValue<Integer> PARALLEL_SEARCH_THREADS;
+	public static ConfigValue<Integer> MAX_QUEUED_TASKS;
+	public static ConfigValue<OverloadPolicy> OVERLOAD_POLICY;
+	public static ConfigValue<Integer> LOCATE_TIMEOUT_SECONDS;
+	public static ConfigValue<Boolean> PERSISTENT_STRUCTURE_STORE;
+	public static ConfigValue<Integer> LIVE_STRUCTURE_INDEX_CHUNKS;
+	public static ConfigValue<Integer> RESULT_APPLY_BUDGET_MICROS;
 	public static ConfigValue<Integer> BIOME_SEARCH_RADIUS;
 	public static ConfigValue<Boolean> REMOVE_OFFER;
 
@@ -25,10 +56,27 @@ public class AsyncLocatorConfigNeoForge {
 	public static ConfigValue<Boolean> LOCATE_BIOME_COMMAND_ENABLED;
 	public static ConfigValue<Boolean> VILLAGER_TRADE_ENABLED;
 
+	// Priorities
+	public static ConfigValue<Integer> LOCATE_COMMAND_PRIORITY;
+	public static ConfigValue<Integer> LOCATE_BIOME_COMMAND_PRIORITY;
+	public static ConfigValue<Integer> EYE_OF_ENDER_PRIORITY;
+	public static ConfigValue<Integer> VILLAGER_TRADE_PRIORITY;
+	public static ConfigValue<Integer> EXPLORATION_MAP_PRIORITY;
+	public static ConfigValue<Integer> DOLPHIN_TREASURE_PRIORITY;
+	public static ConfigValue<Integer> OTHER_PRIORITY;
+
+	// Quotas
+	public static ConfigValue<Integer> LOCATE_COMMAND_QUOTA;
+	public static ConfigValue<Integer> LOCATE_BIOME_COMMAND_QUOTA;
+	public static ConfigValue<Integer> EYE_OF_ENDER_QUOTA;
+	public static ConfigValue<Integer> VILLAGER_TRADE_QUOTA;
+	public static ConfigValue<Integer> EXPLORATION_MAP_QUOTA;
+	public static ConfigValue<Integer> DOLPHIN_TREASURE_QUOTA;
+	public static ConfigValue<Integer> OTHER_QUOTA;
+
 	static {
 		ModConfigSpec.Builder builder = new ModConfigSpec.Builder();
 			LOCATOR_THREADS = builder
-				.worldRestart()
 				.comment(
 					"The maximum number of threads in the async locator thread pool.",
 					"There's an upper limit of 64. This should only be increased if you're experiencing",
@@ -52,6 +100,80 @@ public class AsyncLocatorConfigNeoForge {
 						return true;
 					});
 
+				EXECUTOR_MODE = builder
+					.comment(
+						"What locate tasks run on. One of:",
+						"FIXED - A pool of asyncLocatorThreads threads.",
+						"VIRTUAL - Virtual threads, so tasks waiting on chunks to load or generate don't hold up a thread.",
+						"Up to virtualThreadTasks tasks run at once, but only asyncLocatorThreads of them can use the CPU at a time.",
+						"This is worth trying if locates often have to wait on chunks, e.g. villager maps in new areas."
+					)
+					.defineEnum("executorMode", ExecutorMode.FIXED);
+
+				VIRTUAL_THREAD_TASKS = builder
+					.comment(
+						"The maximum number of locate tasks running at once when executorMode is VIRTUAL,",
+						"including those waiting on chunks."
+					)
+					.defineInRange("virtualThreadTasks", DEFAULT_VIRTUAL_THREAD_TASKS, 1, MAX_VIRTUAL_THREAD_TASKS);
+
+				PARALLEL_SEARCH_THREADS = builder
+					.comment(
+						"The number of extra threads a single structure or biome search can split its work onto.",
+						"This makes long searches (e.g. a woodland mansion map from the middle of an ocean, or a rare biome",
+						"with a large biomeSearchRadius) finish sooner,",
+						"at the cost of more CPU use and some chunks past the result being checked.",
+						"Searches give the same result either way. 0 turns parallel searching off."
+					)
+					.defineInRange("parallelSearchThreads", 0, 0, MAX_THREADS);
+
+				MAX_QUEUED_TASKS = builder
+					.comment(
+						"The maximum number of locate tasks that can be waiting to be run.",
+						"Once the queue is full, new tasks are handled according to overloadPolicy."
+					)
+					.defineInRange("maxQueuedTasks", DEFAULT_MAX_QUEUED_TASKS, MIN_MAX_QUEUED_TASKS, MAX_MAX_QUEUED_TASKS);
+
+				OVERLOAD_POLICY = builder
+					.comment(
+						"What to do with new locate tasks when the queue is full. One of:",
+						"REJECT - Turn the new task away.",
+						"DROP_LOWEST_PRIORITY - Drop the oldest queued task with the lowest priority, if it's lower than the new task's.",
+						"Rejected tasks end up as if nothing was found, except for the locate commands which ask to try again."
+					)
+					.defineEnum("overloadPolicy", OverloadPolicy.REJECT);
+
+				LOCATE_TIMEOUT_SECONDS = builder
+					.comment(
+						"How many seconds a locate can take from being queued before it gives up as if nothing was found.",
+						"0 means no limit."
+					)
+					.defineInRange("locateTimeoutSeconds", DEFAULT_LOCATE_TIMEOUT_SECONDS, 0, MAX_LOCATE_TIMEOUT_SECONDS);
+
+				PERSISTENT_STRUCTURE_STORE = builder
+					.comment(
+						"If true, structure starts found by searches are kept in the asynclocator folder of the world,",
+						"so searches after a restart don't have to check those chunks again.",
+						"It's cleared automatically if the seed or worldgen datapacks change."
+					)
+					.define("persistentStructureStore", true);
+
+				LIVE_STRUCTURE_INDEX_CHUNKS = builder
+					.comment(
+						"How many chunks' structure starts are kept in memory per dimension as chunks are generated or loaded,",
+						"so searches can skip checking those chunks. Each chunk takes around 40 bytes.",
+						"The chunks known the longest are forgotten first once full. 0 turns it off."
+					)
+					.defineInRange("liveStructureIndexChunks", DEFAULT_LIVE_STRUCTURE_INDEX_CHUNKS, 0, MAX_LIVE_STRUCTURE_INDEX_CHUNKS);
+
+				RESULT_APPLY_BUDGET_MICROS = builder
+					.comment(
+						"How many microseconds of each server tick can be spent applying finished locates, such as filling in maps.",
+						"Whatever doesn't fit waits for the next tick, and at least one is always applied each tick.",
+						"0 means no limit."
+					)
+					.defineInRange("resultApplyBudgetMicros", DEFAULT_RESULT_APPLY_BUDGET_MICROS, 0, MAX_RESULT_APPLY_BUDGET_MICROS);
+
 				BIOME_SEARCH_RADIUS = builder
 					.comment(
 						"Maximum search radius in blocks for /locate biome command.",
@@ -87,6 +209,64 @@ public class AsyncLocatorConfigNeoForge {
 					.comment("If true, enables asynchronous locating of structures for villager trades.")
 					.define("villagerTradeEnabled", true);
 				builder.pop();
+
+				builder.push("Priorities");
+				LOCATE_COMMAND_PRIORITY = builder
+					.comment(
+						"Priority of structure locates for the locate command.",
+						"Higher priority locates run first when several are queued. Every 0.5 seconds a locate",
+						"has been waiting counts as one extra point of priority, so lower priorities still get run."
+					)
+					.defineInRange("locateCommandPriority", 10, MIN_PRIORITY, MAX_PRIORITY);
+				LOCATE_BIOME_COMMAND_PRIORITY = builder
+					.comment("Priority of biome locates for the locate command.")
+					.defineInRange("locateBiomeCommandPriority", 10, MIN_PRIORITY, MAX_PRIORITY);
+				EYE_OF_ENDER_PRIORITY = builder
+					.comment("Priority of structure locates when Eyes Of Ender are thrown.")
+					.defineInRange("eyeOfEnderPriority", 8, MIN_PRIORITY, MAX_PRIORITY);
+				VILLAGER_TRADE_PRIORITY = builder
+					.comment("Priority of structure locates for villager trades.")
+					.defineInRange("villagerTradePriority", 4, MIN_PRIORITY, MAX_PRIORITY);
+				EXPLORATION_MAP_PRIORITY = builder
+					.comment("Priority of structure locates for exploration maps found in chests.")
+					.defineInRange("explorationMapPriority", 2, MIN_PRIORITY, MAX_PRIORITY);
+				DOLPHIN_TREASURE_PRIORITY = builder
+					.comment("Priority of structure locates for dolphin treasures.")
+					.defineInRange("dolphinTreasurePriority", 1, MIN_PRIORITY, MAX_PRIORITY);
+				OTHER_PRIORITY = builder
+					.comment("Priority of locates queued by other mods.")
+					.defineInRange("otherPriority", 5, MIN_PRIORITY, MAX_PRIORITY);
+				builder.pop();
+
+				builder.push("Quotas");
+				LOCATE_COMMAND_QUOTA = builder
+					.comment(
+						"How many structure locates each player or command source can make per minute with the locate command.",
+						"Requests over the quota are refused with a message to try again. 0 means no limit."
+					)
+					.defineInRange("locateCommandQuota", 20, MIN_QUOTA, MAX_QUOTA);
+				LOCATE_BIOME_COMMAND_QUOTA = builder
+					.comment("How many biome locates each player or command source can make per minute with the locate command.")
+					.defineInRange("locateBiomeCommandQuota", 10, MIN_QUOTA, MAX_QUOTA);
+				EYE_OF_ENDER_QUOTA = builder
+					.comment(
+						"How many Eyes Of Ender each player can throw per minute before they have to wait.",
+						"Requests over the quota are delayed until the quota refills, or refused if too many are waiting."
+					)
+					.defineInRange("eyeOfEnderQuota", 30, MIN_QUOTA, MAX_QUOTA);
+				VILLAGER_TRADE_QUOTA = builder
+					.comment("How many treasure map trades per minute each trading player, or each villager without one, can locate.")
+					.defineInRange("villagerTradeQuota", 30, MIN_QUOTA, MAX_QUOTA);
+				EXPLORATION_MAP_QUOTA = builder
+					.comment("How many exploration maps in chests each player can cause to be located per minute.")
+					.defineInRange("explorationMapQuota", 60, MIN_QUOTA, MAX_QUOTA);
+				DOLPHIN_TREASURE_QUOTA = builder
+					.comment("How many dolphin treasure locates each dolphin can make per minute.")
+					.defineInRange("dolphinTreasureQuota", 60, MIN_QUOTA, MAX_QUOTA);
+				OTHER_QUOTA = builder
+					.comment("How many locates per minute other mods can make for each source they give.")
+					.defineInRange("otherQuota", 0, MIN_QUOTA, MAX_QUOTA);
+				builder.pop();
 				SPEC = builder.build();
 			}
 
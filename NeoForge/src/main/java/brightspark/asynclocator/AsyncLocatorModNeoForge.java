@@ -1,13 +1,18 @@
 package brightspark.asynclocator;
 
+import net.minecraft.server.MinecraftServer;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.config.ModConfig;
 import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
 import net.neoforged.neoforge.event.server.ServerAboutToStartEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
 
 @Mod(ALConstants.MOD_ID)
 public class AsyncLocatorModNeoForge {
@@ -30,11 +35,12 @@ public class AsyncLocatorModNeoForge {
 
 		modEventBus.addListener((ModConfigEvent.Reloading event) -> {
 			if (event.getConfig().getSpec() == AsyncLocatorConfigNeoForge.SPEC) {
-				ALConstants.logInfo("Config reloaded");
-				AsyncLocatorConfigNeoForge.validateConfig();
-				AsyncLocatorModCommon.printConfigs();
-				if (AsyncLocator.isExecutorActive()) {
-					AsyncLocator.setupExecutorService();
+				// Reloads come from the config file watcher's thread, so they're applied on the server thread if there is one
+				MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+				if (server != null) {
+					server.execute(AsyncLocatorModNeoForge::onConfigReloaded);
+				} else {
+					onConfigReloaded();
 				}
 			}
 		});
@@ -46,5 +52,23 @@ public class AsyncLocatorModNeoForge {
 		neoforgeEventBus.addListener((ServerStoppingEvent event) ->
 				AsyncLocator.shutdownExecutorService()
 		);
+		neoforgeEventBus.addListener((ServerTickEvent.Post event) ->
+			AsyncLocator.onServerTickEnd(event.getServer())
+		);
+		neoforgeEventBus.addListener((TagsUpdatedEvent event) -> {
+			if (event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD) {
+				AsyncLocator.onDatapackReload();
+			}
+		});
+		neoforgeEventBus.addListener((RegisterCommandsEvent event) ->
+			AsyncLocatorCommand.register(event.getDispatcher())
+		);
+	}
+
+	private static void onConfigReloaded() {
+		ALConstants.logInfo("Config reloaded");
+		AsyncLocatorConfigNeoForge.validateConfig();
+		AsyncLocatorModCommon.printConfigs();
+		AsyncLocator.reconfigureExecutorService();
 	}
 }
@@ -1,6 +1,9 @@
 package brightspark.asynclocator.platform;
 
 import brightspark.asynclocator.AsyncLocatorConfigNeoForge;
+import brightspark.asynclocator.locate.ExecutorMode;
+import brightspark.asynclocator.locate.LocateFeature;
+import brightspark.asynclocator.locate.OverloadPolicy;
 import brightspark.asynclocator.platform.services.ConfigHelper;
 
 public class NeoForgeConfigHelper implements ConfigHelper {
@@ -10,11 +13,56 @@ public class NeoForgeConfigHelper implements ConfigHelper {
 		return AsyncLocatorConfigNeoForge.LOCATOR_THREADS.get();
 	}
 
+	@Override
+	public ExecutorMode executorMode() {
+		return AsyncLocatorConfigNeoForge.EXECUTOR_MODE.get();
+	}
+
+	@Override
+	public int virtualThreadTasks() {
+		return AsyncLocatorConfigNeoForge.VIRTUAL_THREAD_TASKS.get();
+	}
+
+	@Override
+	public int parallelSearchThreads() {
+		return AsyncLocatorConfigNeoForge.PARALLEL_SEARCH_THREADS.get();
+	}
+
+	@Override
+	public int maxQueuedTasks() {
+		return AsyncLocatorConfigNeoForge.MAX_QUEUED_TASKS.get();
+	}
+
+	@Override
+	public OverloadPolicy overloadPolicy() {
+		return AsyncLocatorConfigNeoForge.OVERLOAD_POLICY.get();
+	}
+
+	@Override
+	public int locateTimeoutSeconds() {
+		return AsyncLocatorConfigNeoForge.LOCATE_TIMEOUT_SECONDS.get();
+	}
+
 	@Override
 	public int biomeSearchRadius() {
 		return AsyncLocatorConfigNeoForge.BIOME_SEARCH_RADIUS.get();
 	}
 
+	@Override
+	public boolean persistentStructureStore() {
+		return AsyncLocatorConfigNeoForge.PERSISTENT_STRUCTURE_STORE.get();
+	}
+
+	@Override
+	public int liveStructureIndexChunks() {
+		return AsyncLocatorConfigNeoForge.LIVE_STRUCTURE_INDEX_CHUNKS.get();
+	}
+
+	@Override
+	public int resultApplyBudgetMicros() {
+		return AsyncLocatorConfigNeoForge.RESULT_APPLY_BUDGET_MICROS.get();
+	}
+
 	@Override
 	public boolean removeOffer() {
 		return AsyncLocatorConfigNeoForge.REMOVE_OFFER.get();
@@ -49,4 +97,30 @@ public class NeoForgeConfigHelper implements ConfigHelper {
 	public boolean villagerTradeEnabled() {
 	return AsyncLocatorConfigNeoForge.VILLAGER_TRADE_ENABLED.get();
 	}
+
+	@Override
+	public int locatePriority(LocateFeature feature) {
+		return switch (feature) {
+			case LOCATE_COMMAND -> AsyncLocatorConfigNeoForge.LOCATE_COMMAND_PRIORITY.get();
+			case LOCATE_BIOME_COMMAND -> AsyncLocatorConfigNeoForge.LOCATE_BIOME_COMMAND_PRIORITY.get();
+			case EYE_OF_ENDER -> AsyncLocatorConfigNeoForge.EYE_OF_ENDER_PRIORITY.get();
+			case VILLAGER_TRADE -> AsyncLocatorConfigNeoForge.VILLAGER_TRADE_PRIORITY.get();
+			case EXPLORATION_MAP -> AsyncLocatorConfigNeoForge.EXPLORATION_MAP_PRIORITY.get();
+			case DOLPHIN_TREASURE -> AsyncLocatorConfigNeoForge.DOLPHIN_TREASURE_PRIORITY.get();
+			case OTHER -> AsyncLocatorConfigNeoForge.OTHER_PRIORITY.get();
+		};
+	}
+
+	@Override
+	public int locateQuota(LocateFeature feature) {
+		return switch (feature) {
+			case LOCATE_COMMAND -> AsyncLocatorConfigNeoForge.LOCATE_COMMAND_QUOTA.get();
+			case LOCATE_BIOME_COMMAND -> AsyncLocatorConfigNeoForge.LOCATE_BIOME_COMMAND_QUOTA.get();
+			case EYE_OF_ENDER -> AsyncLocatorConfigNeoForge.EYE_OF_ENDER_QUOTA.get();
+			case VILLAGER_TRADE -> AsyncLocatorConfigNeoForge.VILLAGER_TRADE_QUOTA.get();
+			case EXPLORATION_MAP -> AsyncLocatorConfigNeoForge.EXPLORATION_MAP_QUOTA.get();
+			case DOLPHIN_TREASURE -> AsyncLocatorConfigNeoForge.DOLPHIN_TREASURE_QUOTA.get();
+			case OTHER -> AsyncLocatorConfigNeoForge.OTHER_QUOTA.get();
+		};
+	}
 }
@@ -2,6 +2,7 @@ package brightspark.asynclocator.platform;
 
 import brightspark.asynclocator.ALConstants;
 import brightspark.asynclocator.logic.CommonLogic;
+import brightspark.asynclocator.logic.PendingMapJobs;
 import brightspark.asynclocator.platform.services.ExplorationMapFunctionLogicHelper;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
@@ -17,19 +18,14 @@ import net.neoforged.neoforge.items.IItemHandlerModifiable;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.UUID;
 import java.util.function.BiConsumer;
 
 public class NeoForgeExplorationMapFunctionLogicHelper
 	implements ExplorationMapFunctionLogicHelper {
 
 	@Override
-	public void invalidateMap(
-		ItemStack mapStack,
-		ServerLevel level,
-		BlockPos invPos
-	) {
-		boolean updated = handleUpdateMapInChest(mapStack, level, invPos, (handler, slot) -> {
+	public void invalidateMap(PendingMapJobs.Job job, ServerLevel level) {
+		boolean updated = handleUpdateMapInChest(job, level, (handler, slot) -> {
 			ALConstants.logDebug(
 				"Invalidating map in Forge inventory slot {}",
 				slot
@@ -42,7 +38,7 @@ public class NeoForgeExplorationMapFunctionLogicHelper
 			} else {
 				ItemStack extracted = handler.extractItem(
 					slot,
-					mapStack.getCount(),
+					handler.getStackInSlot(slot).getCount(),
 					false
 				);
 				if (!extracted.isEmpty()) {
@@ -52,24 +48,24 @@ public class NeoForgeExplorationMapFunctionLogicHelper
 		});
 		if (!updated) {
 			ALConstants.logDebug("NeoForge invalidateMap fallback: no container/slot match. Clearing pending state in-place.");
-			CommonLogic.clearPendingState(mapStack);
+			CommonLogic.clearPendingState(job.stack());
 		}
 	}
 
 	@Override
 	public void updateMap(
-		ItemStack mapStack,
+		PendingMapJobs.Job job,
 		ServerLevel level,
 		BlockPos pos,
 		int scale,
 		Holder<MapDecorationType> destinationTypeHolder,
-		BlockPos invPos,
-		@Nullable Component displayName
+		@Nullable Component displayName,
+		@Nullable byte[] biomePreview
 	) {
-		boolean updated = handleUpdateMapInChest(mapStack, level, invPos, (handler, slot) -> {
+		boolean updated = handleUpdateMapInChest(job, level, (handler, slot) -> {
 			ItemStack actualStack = handler.getStackInSlot(slot);
 
-			CommonLogic.finalizeMap(actualStack, level, pos, scale, destinationTypeHolder, displayName);
+			CommonLogic.finalizeMap(actualStack, level, pos, scale, destinationTypeHolder, displayName, biomePreview);
 			// finalize the actual stack
 			ALConstants.logDebug("Updated map in NeoForge inventory slot {}, broadcasting changes.", slot);
 
@@ -86,39 +82,31 @@ public class NeoForgeExplorationMapFunctionLogicHelper
 	}
 
 	private static boolean handleUpdateMapInChest(
-		ItemStack mapStackToFind,
+		PendingMapJobs.Job job,
 		ServerLevel level,
-		BlockPos inventoryPos,
 		BiConsumer<IItemHandler, Integer> handleSlotFound
 	) {
+		BlockPos inventoryPos = job.containerPos();
+		if (inventoryPos == null) {
+			return false;
+		}
 		BlockEntity be = level.getBlockEntity(inventoryPos);
 		if (be != null) {
 			IItemHandler itemHandler = level.getCapability(Capabilities.ItemHandler.BLOCK, inventoryPos, null);
 			if (itemHandler != null) {
-				boolean found = false;
-				UUID targetId = CommonLogic.getTrackingUUID(mapStackToFind);
-
-				if (targetId != null) {
-					for (int i = 0; i < itemHandler.getSlots(); i++) {
-						ItemStack slotStack = itemHandler.getStackInSlot(i);
-						UUID slotId = CommonLogic.getTrackingUUID(slotStack);
-						if (targetId.equals(slotId)) {
-							handleSlotFound.accept(itemHandler, i);
-							CommonLogic.broadcastChestChanges(level, be);
-							found = true;
-							break;
-						}
-					}
-				}
-				if (!found) {
-					ALConstants.logWarn(
-						"Could not find map with UUID {} in {} at {}",
-						targetId,
-						be.getClass().getSimpleName(),
-						inventoryPos
-					);
+				int slot = job.findSlot(itemHandler.getSlots(), itemHandler::getStackInSlot);
+				if (slot >= 0) {
+					handleSlotFound.accept(itemHandler, slot);
+					CommonLogic.broadcastChestChanges(level, be);
+					return true;
 				}
-				return found;
+				ALConstants.logWarn(
+					"Could not find map of job {} in {} at {}",
+					job.id(),
+					be.getClass().getSimpleName(),
+					inventoryPos
+				);
+				return false;
 			} else {
 				ALConstants.logWarn(
 					"Couldn't find item handler capability on block entity {} at {}",